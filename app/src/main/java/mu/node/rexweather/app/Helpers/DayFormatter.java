@@ -2,20 +2,66 @@ package mu.node.rexweather.app.Helpers;
 
 import android.content.Context;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import mu.node.rexweather.app.R;
 
 /**
- * Quick and dirty day formatter helper class.
+ * Formats timestamps as day labels such as "Today", "Tomorrow" and "Wednesday".
+ * <p>
+ * The labels are looked up once when the formatter is created, and the local day boundary is
+ * computed once per {@link #setReferenceTime(long)}. Formatting a timestamp is then plain
+ * integer arithmetic and a table lookup, so it does not allocate.
  */
 public class DayFormatter {
     private final static long MILLISECONDS_IN_SECONDS = 1000;
-    private final Context mContext;
+    private final static long MILLISECONDS_IN_DAY = TimeUnit.DAYS.toMillis(1);
+    private final static int DAYS_IN_WEEK = 7;
+
+    private final String mTodayLabel;
+    private final String mTomorrowLabel;
+    private final String[] mWeekdayLabels = new String[DAYS_IN_WEEK];  // Sunday first.
+
+    private TimeZone mTimeZone;
+    private long mToday;
+    private int mTodayDayOfWeek;
 
     public DayFormatter(Context context) {
-        mContext = context;
+        mTodayLabel = context.getResources().getString(R.string.today);
+        mTomorrowLabel = context.getResources().getString(R.string.tomorrow);
+
+        // DateFormatSymbols indexes weekdays by Calendar.SUNDAY (1) to Calendar.SATURDAY (7).
+        final String[] weekdays = DateFormatSymbols.getInstance(Locale.getDefault()).getWeekdays();
+        for (int i = 0; i < DAYS_IN_WEEK; i++) {
+            mWeekdayLabels[i] = weekdays[Calendar.SUNDAY + i];
+        }
+
+        setReferenceTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Set the moment that "Today" refers to, in milliseconds since the epoch. Call this once per
+     * refresh rather than per formatted timestamp.
+     *
+     * @return whether labels may differ from those formatted before, because the local day or
+     * the time zone changed.
+     */
+    public boolean setReferenceTime(final long milliseconds) {
+        final TimeZone previousTimeZone = mTimeZone;
+        final long previousToday = mToday;
+
+        mTimeZone = TimeZone.getDefault();
+        mToday = getLocalDay(milliseconds);
+
+        final Calendar calendar = Calendar.getInstance(mTimeZone);
+        calendar.setTimeInMillis(milliseconds);
+        mTodayDayOfWeek = calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+
+        return mToday != previousToday || !mTimeZone.equals(previousTimeZone);
     }
 
     /**
@@ -23,35 +69,19 @@ public class DayFormatter {
      * and "Wednesday"
      */
     public String format(final long unixTimestamp) {
-        final long milliseconds = unixTimestamp * MILLISECONDS_IN_SECONDS;
-        String day;
-
-        if (isToday(milliseconds)) {
-            day = mContext.getResources().getString(R.string.today);
-        } else if (isTomorrow(milliseconds)) {
-            day = mContext.getResources().getString(R.string.tomorrow);
-        } else {
-            day = getDayOfWeek(milliseconds);
-        }
+        final long dayOffset = getLocalDay(unixTimestamp * MILLISECONDS_IN_SECONDS) - mToday;
 
-        return day;
-    }
-
-    private String getDayOfWeek(final long milliseconds) {
-        return new SimpleDateFormat("EEEE").format(new Date(milliseconds));
-    }
+        if (dayOffset == 0) {
+            return mTodayLabel;
+        } else if (dayOffset == 1) {
+            return mTomorrowLabel;
+        }
 
-    private boolean isToday(final long milliseconds) {
-        final SimpleDateFormat dayInYearFormat = new SimpleDateFormat("yyyyD");
-        final String nowHash = dayInYearFormat.format(new Date());
-        final String comparisonHash = dayInYearFormat.format(new Date(milliseconds));
-        return nowHash.equals(comparisonHash);
+        final int dayOfWeek = (int) ((mTodayDayOfWeek + dayOffset) % DAYS_IN_WEEK);
+        return mWeekdayLabels[dayOfWeek < 0 ? dayOfWeek + DAYS_IN_WEEK : dayOfWeek];
     }
 
-    private boolean isTomorrow(final long milliseconds) {
-        final SimpleDateFormat dayInYearFormat = new SimpleDateFormat("yyyyD");
-        final int tomorrowHash = Integer.parseInt(dayInYearFormat.format(new Date())) + 1;
-        final int comparisonHash = Integer.parseInt(dayInYearFormat.format(new Date(milliseconds)));
-        return comparisonHash == tomorrowHash;
+    private long getLocalDay(final long milliseconds) {
+        return (milliseconds + mTimeZone.getOffset(milliseconds)) / MILLISECONDS_IN_DAY;
     }
 }
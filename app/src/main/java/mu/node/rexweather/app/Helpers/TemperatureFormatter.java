@@ -1,8 +1,52 @@
 package mu.node.rexweather.app.Helpers;
 
+/**
+ * Formats temperatures as whole degrees, e.g. "21°".
+ * <p>
+ * Rendered strings for every whole degree in the plausible range of both Celsius and Fahrenheit
+ * are built once, so formatting a temperature while binding views does not allocate.
+ */
 public class TemperatureFormatter {
+    private static final char DEGREE_SIGN = '°';
+
+    // Covers recorded extremes in Celsius (-89 to 57) as well as Fahrenheit (-128 to 134).
+    private static final int MINIMUM_TABULATED_TEMPERATURE = -130;
+    private static final int MAXIMUM_TABULATED_TEMPERATURE = 140;
+
+    private static final String[] sTemperatures =
+            new String[MAXIMUM_TABULATED_TEMPERATURE - MINIMUM_TABULATED_TEMPERATURE + 1];
+
+    static {
+        for (int i = 0; i < sTemperatures.length; i++) {
+            sTemperatures[i] = String.valueOf(MINIMUM_TABULATED_TEMPERATURE + i) + DEGREE_SIGN;
+        }
+    }
 
     public static String format(float temperature) {
-        return String.valueOf(Math.round(temperature)) + "°";
+        final int degrees = Math.round(temperature);
+        if (isTabulated(degrees)) {
+            return sTemperatures[degrees - MINIMUM_TABULATED_TEMPERATURE];
+        }
+        return String.valueOf(degrees) + DEGREE_SIGN;
+    }
+
+    /**
+     * Format without allocating. Temperatures outside the precomputed range are written into the
+     * given buffer, which is then returned, so the result is only valid until the buffer is
+     * reused. {@link android.widget.TextView#setText(CharSequence)} copies it, so a single buffer
+     * can be shared by all binds on the main thread.
+     */
+    public static CharSequence format(float temperature, StringBuilder buffer) {
+        final int degrees = Math.round(temperature);
+        if (isTabulated(degrees)) {
+            return sTemperatures[degrees - MINIMUM_TABULATED_TEMPERATURE];
+        }
+        buffer.setLength(0);
+        buffer.append(degrees).append(DEGREE_SIGN);
+        return buffer;
+    }
+
+    private static boolean isTabulated(final int degrees) {
+        return degrees >= MINIMUM_TABULATED_TEMPERATURE && degrees <= MAXIMUM_TABULATED_TEMPERATURE;
     }
 }
@@ -0,0 +1,31 @@
+package mu.node.rexweather.app.Helpers;
+
+/**
+ * Unit temperatures are displayed in.
+ * <p>
+ * Weather data is fetched and cached in Celsius only; conversion happens as values are bound to
+ * views, so switching units needs neither a second copy of the data nor a refetch.
+ */
+public enum TemperatureUnit {
+    CELSIUS {
+        @Override
+        public float fromCelsius(final float celsius) {
+            return celsius;
+        }
+    },
+    FAHRENHEIT {
+        @Override
+        public float fromCelsius(final float celsius) {
+            return celsius * 9 / 5 + 32;
+        }
+    };
+
+    public abstract float fromCelsius(float celsius);
+
+    /**
+     * The unit to switch to from this one.
+     */
+    public TemperatureUnit next() {
+        return this == CELSIUS ? FAHRENHEIT : CELSIUS;
+    }
+}
@@ -0,0 +1,111 @@
+package mu.node.rexweather.app.Models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forecast in 3 hour steps for a single location.
+ * <p>
+ * Data points are stored in parallel primitive arrays rather than one object per point, which
+ * keeps memory flat when hourly data is held for many locations. Descriptions are stored as
+ * codes from {@link WeatherDescriptions}.
+ */
+public class HourlyForecast {
+    private static final long MILLISECONDS_IN_SECONDS = 1000;
+    private static final long MILLISECONDS_IN_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long MILLISECONDS_TO_MIDDAY = TimeUnit.HOURS.toMillis(12);
+
+    private final String mLocationName;
+    private final int mCount;
+    private final long[] mTimestamps;
+    private final float[] mTemperatures;
+    private final short[] mDescriptionCodes;
+
+    /**
+     * The arrays are taken over by this instance and must not be modified afterwards. Only the
+     * first {@code count} entries are used, and timestamps must be in ascending order.
+     */
+    public HourlyForecast(final String locationName,
+                          final int count,
+                          final long[] timestamps,
+                          final float[] temperatures,
+                          final short[] descriptionCodes) {
+
+        mLocationName = locationName;
+        mCount = count;
+        mTimestamps = timestamps;
+        mTemperatures = temperatures;
+        mDescriptionCodes = descriptionCodes;
+    }
+
+    public String getLocationName() {
+        return mLocationName;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Unix timestamp of a data point, in seconds.
+     */
+    public long getTimestamp(final int index) {
+        return mTimestamps[index];
+    }
+
+    public float getTemperature(final int index) {
+        return mTemperatures[index];
+    }
+
+    public String getDescription(final int index) {
+        return WeatherDescriptions.get(mDescriptionCodes[index]);
+    }
+
+    /**
+     * Aggregate the data points into one forecast per local calendar day. The minimum and
+     * maximum are taken over the day's data points, and the description and timestamp come from
+     * the point closest to midday.
+     */
+    public List<WeatherForecast> toDailyForecasts(final TimeZone timeZone) {
+        final List<WeatherForecast> dailyForecasts = new ArrayList<>();
+
+        int dayStart = 0;
+        while (dayStart < mCount) {
+            final long day = getLocalDay(mTimestamps[dayStart], timeZone);
+            float minimumTemperature = mTemperatures[dayStart];
+            float maximumTemperature = mTemperatures[dayStart];
+            int midday = dayStart;
+            long middayDistance = Long.MAX_VALUE;
+
+            int i = dayStart;
+            for (; i < mCount && getLocalDay(mTimestamps[i], timeZone) == day; i++) {
+                minimumTemperature = Math.min(minimumTemperature, mTemperatures[i]);
+                maximumTemperature = Math.max(maximumTemperature, mTemperatures[i]);
+
+                final long distance = Math.abs(getLocalMillis(mTimestamps[i], timeZone)
+                        - (day * MILLISECONDS_IN_DAY + MILLISECONDS_TO_MIDDAY));
+                if (distance < middayDistance) {
+                    middayDistance = distance;
+                    midday = i;
+                }
+            }
+
+            dailyForecasts.add(new WeatherForecast(mLocationName, mTimestamps[midday],
+                    getDescription(midday), minimumTemperature, maximumTemperature));
+            dayStart = i;
+        }
+
+        return dailyForecasts;
+    }
+
+    private static long getLocalMillis(final long unixTimestamp, final TimeZone timeZone) {
+        final long milliseconds = unixTimestamp * MILLISECONDS_IN_SECONDS;
+        return milliseconds + timeZone.getOffset(milliseconds);
+    }
+
+    private static long getLocalDay(final long unixTimestamp, final TimeZone timeZone) {
+        return getLocalMillis(unixTimestamp, timeZone) / MILLISECONDS_IN_DAY;
+    }
+}
@@ -0,0 +1,39 @@
+package mu.node.rexweather.app.Models;
+
+/**
+ * A location the user keeps track of. The Open Weather Map city ID is optional; when it is known
+ * the location can be fetched together with other cities in a single group request.
+ */
+public class SavedLocation {
+    public static final long NO_CITY_ID = 0;
+
+    private final long mCityId;
+    private final double mLongitude;
+    private final double mLatitude;
+
+    public SavedLocation(final double longitude, final double latitude) {
+        this(NO_CITY_ID, longitude, latitude);
+    }
+
+    public SavedLocation(final long cityId, final double longitude, final double latitude) {
+        mCityId = cityId;
+        mLongitude = longitude;
+        mLatitude = latitude;
+    }
+
+    public long getCityId() {
+        return mCityId;
+    }
+
+    public boolean hasCityId() {
+        return mCityId != NO_CITY_ID;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+}
@@ -0,0 +1,41 @@
+package mu.node.rexweather.app.Models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide intern table for weather descriptions.
+ * <p>
+ * The web service only ever returns a few dozen distinct descriptions, so columnar models store
+ * a short code per data point instead of a reference to a String.
+ */
+public class WeatherDescriptions {
+    /** Code for a data point that has no description. */
+    public static final short NONE = -1;
+
+    private static final Map<String, Short> sCodes = new HashMap<>();
+    private static final List<String> sDescriptions = new ArrayList<>();
+
+    private WeatherDescriptions() {
+    }
+
+    public static synchronized short intern(final String description) {
+        final Short code = sCodes.get(description);
+        if (code != null) {
+            return code;
+        }
+        if (sDescriptions.size() > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct weather descriptions");
+        }
+        final short newCode = (short) sDescriptions.size();
+        sDescriptions.add(description);
+        sCodes.put(description, newCode);
+        return newCode;
+    }
+
+    public static synchronized String get(final short code) {
+        return code != NONE ? sDescriptions.get(code) : null;
+    }
+}
@@ -0,0 +1,134 @@
+package mu.node.rexweather.app.Models;
+
+import java.util.List;
+
+/**
+ * Everything known about the weather at one location at one point in time: current conditions,
+ * the daily and the 3 hour step forecasts, when each of them was fetched and where this
+ * snapshot came from.
+ * <p>
+ * Snapshots are immutable. The {@code with} methods return a new snapshot that shares every
+ * part they do not replace, so updating one part never copies the others. Parts that have not
+ * been fetched are null, with a fetch time of 0.
+ */
+public class WeatherSnapshot {
+    public enum Source {
+        /** Every part was served from memory or disk. */
+        CACHE,
+        /** At least one part was fetched from the web service. */
+        NETWORK
+    }
+
+    public static final WeatherSnapshot EMPTY =
+            new WeatherSnapshot(null, 0, null, 0, null, 0, Source.CACHE);
+
+    private final CurrentWeather mCurrentWeather;
+    private final long mCurrentWeatherFetchedAt;
+    private final List<WeatherForecast> mWeatherForecasts;
+    private final long mWeatherForecastsFetchedAt;
+    private final HourlyForecast mHourlyForecast;
+    private final long mHourlyForecastFetchedAt;
+    private final Source mSource;
+
+    /**
+     * Fetch times are wall clock times in milliseconds since the epoch. The forecast list is
+     * taken over by this instance and must not be modified afterwards.
+     */
+    public WeatherSnapshot(final CurrentWeather currentWeather,
+                           final long currentWeatherFetchedAt,
+                           final List<WeatherForecast> weatherForecasts,
+                           final long weatherForecastsFetchedAt,
+                           final HourlyForecast hourlyForecast,
+                           final long hourlyForecastFetchedAt,
+                           final Source source) {
+
+        mCurrentWeather = currentWeather;
+        mCurrentWeatherFetchedAt = currentWeatherFetchedAt;
+        mWeatherForecasts = weatherForecasts;
+        mWeatherForecastsFetchedAt = weatherForecastsFetchedAt;
+        mHourlyForecast = hourlyForecast;
+        mHourlyForecastFetchedAt = hourlyForecastFetchedAt;
+        mSource = source;
+    }
+
+    public CurrentWeather getCurrentWeather() {
+        return mCurrentWeather;
+    }
+
+    public long getCurrentWeatherFetchedAt() {
+        return mCurrentWeatherFetchedAt;
+    }
+
+    public List<WeatherForecast> getWeatherForecasts() {
+        return mWeatherForecasts;
+    }
+
+    public long getWeatherForecastsFetchedAt() {
+        return mWeatherForecastsFetchedAt;
+    }
+
+    public HourlyForecast getHourlyForecast() {
+        return mHourlyForecast;
+    }
+
+    public long getHourlyForecastFetchedAt() {
+        return mHourlyForecastFetchedAt;
+    }
+
+    public Source getSource() {
+        return mSource;
+    }
+
+    public WeatherSnapshot withCurrentWeather(final CurrentWeather currentWeather,
+                                              final long fetchedAt) {
+        return new WeatherSnapshot(currentWeather, fetchedAt,
+                mWeatherForecasts, mWeatherForecastsFetchedAt,
+                mHourlyForecast, mHourlyForecastFetchedAt, mSource);
+    }
+
+    public WeatherSnapshot withWeatherForecasts(final List<WeatherForecast> weatherForecasts,
+                                                final long fetchedAt) {
+        return new WeatherSnapshot(mCurrentWeather, mCurrentWeatherFetchedAt,
+                weatherForecasts, fetchedAt,
+                mHourlyForecast, mHourlyForecastFetchedAt, mSource);
+    }
+
+    public WeatherSnapshot withHourlyForecast(final HourlyForecast hourlyForecast,
+                                              final long fetchedAt) {
+        return new WeatherSnapshot(mCurrentWeather, mCurrentWeatherFetchedAt,
+                mWeatherForecasts, mWeatherForecastsFetchedAt,
+                hourlyForecast, fetchedAt, mSource);
+    }
+
+    public WeatherSnapshot withSource(final Source source) {
+        return source == mSource ? this : new WeatherSnapshot(mCurrentWeather,
+                mCurrentWeatherFetchedAt, mWeatherForecasts, mWeatherForecastsFetchedAt,
+                mHourlyForecast, mHourlyForecastFetchedAt, source);
+    }
+
+    /**
+     * Combine with the parts that {@code other} has and this snapshot lacks or holds older
+     * versions of. The result came from the network if either snapshot did.
+     */
+    public WeatherSnapshot merge(final WeatherSnapshot other) {
+        final boolean isOtherCurrentWeatherNewer = other.mCurrentWeather != null
+                && other.mCurrentWeatherFetchedAt >= mCurrentWeatherFetchedAt;
+        final boolean isOtherWeatherForecastsNewer = other.mWeatherForecasts != null
+                && other.mWeatherForecastsFetchedAt >= mWeatherForecastsFetchedAt;
+        final boolean isOtherHourlyForecastNewer = other.mHourlyForecast != null
+                && other.mHourlyForecastFetchedAt >= mHourlyForecastFetchedAt;
+
+        return new WeatherSnapshot(
+                isOtherCurrentWeatherNewer ? other.mCurrentWeather : mCurrentWeather,
+                isOtherCurrentWeatherNewer
+                        ? other.mCurrentWeatherFetchedAt : mCurrentWeatherFetchedAt,
+                isOtherWeatherForecastsNewer ? other.mWeatherForecasts : mWeatherForecasts,
+                isOtherWeatherForecastsNewer
+                        ? other.mWeatherForecastsFetchedAt : mWeatherForecastsFetchedAt,
+                isOtherHourlyForecastNewer ? other.mHourlyForecast : mHourlyForecast,
+                isOtherHourlyForecastNewer
+                        ? other.mHourlyForecastFetchedAt : mHourlyForecastFetchedAt,
+                mSource == Source.NETWORK || other.mSource == Source.NETWORK
+                        ? Source.NETWORK : Source.CACHE);
+    }
+}
@@ -0,0 +1,87 @@
+package mu.node.rexweather.app.Services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.SavedLocation;
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Fetches the current weather for many locations with as few requests as possible.
+ * <p>
+ * Locations with a known city ID are fetched in group requests of up to a fixed number of
+ * cities, the rest one by one. Only a fixed number of requests run at the same time. Should a
+ * group request fail, its cities are fetched one by one instead.
+ */
+class BatchWeatherFetcher {
+    private final int mMaxCitiesPerGroup;
+    private final int mMaxConcurrentRequests;
+    private final Func1<String, Observable<List<CurrentWeather>>> mGroupRequest;
+    private final Func1<SavedLocation, Observable<CurrentWeather>> mSingleRequest;
+
+    /**
+     * @param groupRequest  fetches the cities whose IDs are given, joined by commas.
+     * @param singleRequest fetches a single location. Should complete empty rather than fail,
+     *                      so that one failed city does not end the whole batch.
+     */
+    BatchWeatherFetcher(final int maxCitiesPerGroup, final int maxConcurrentRequests,
+                        final Func1<String, Observable<List<CurrentWeather>>> groupRequest,
+                        final Func1<SavedLocation, Observable<CurrentWeather>> singleRequest) {
+        mMaxCitiesPerGroup = maxCitiesPerGroup;
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mGroupRequest = groupRequest;
+        mSingleRequest = singleRequest;
+    }
+
+    /**
+     * Results are emitted as soon as each request resolves, in no particular order.
+     */
+    Observable<CurrentWeather> fetch(final List<SavedLocation> locations) {
+        final List<Observable<CurrentWeather>> requests = new ArrayList<>();
+        final List<SavedLocation> groupedLocations = new ArrayList<>();
+
+        for (SavedLocation location : locations) {
+            if (!location.hasCityId()) {
+                requests.add(mSingleRequest.call(location));
+                continue;
+            }
+            groupedLocations.add(location);
+            if (groupedLocations.size() == mMaxCitiesPerGroup) {
+                requests.add(fetchGroup(new ArrayList<>(groupedLocations)));
+                groupedLocations.clear();
+            }
+        }
+        if (!groupedLocations.isEmpty()) {
+            requests.add(fetchGroup(groupedLocations));
+        }
+
+        return Observable.merge(requests, mMaxConcurrentRequests);
+    }
+
+    static String joinCityIds(final List<SavedLocation> locations) {
+        final StringBuilder cityIds = new StringBuilder();
+        for (SavedLocation location : locations) {
+            if (cityIds.length() > 0) {
+                cityIds.append(',');
+            }
+            cityIds.append(location.getCityId());
+        }
+        return cityIds.toString();
+    }
+
+    private Observable<CurrentWeather> fetchGroup(final List<SavedLocation> locations) {
+        // The cities are fetched sequentially on failure so that the fallback stays within its
+        // slot of the request cap.
+        return mGroupRequest.call(joinCityIds(locations))
+                .flatMap(Observable::from)
+                .onErrorResumeNext(error -> {
+                    final List<Observable<CurrentWeather>> requests = new ArrayList<>();
+                    for (SavedLocation location : locations) {
+                        requests.add(mSingleRequest.call(location));
+                    }
+                    return Observable.concat(Observable.from(requests));
+                });
+    }
+}
@@ -0,0 +1,102 @@
+package mu.node.rexweather.app.Services;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Runs blocking web service calls as Observables that cancel the HTTP call in flight when they
+ * are unsubscribed from, closing its socket instead of leaving the request to run to completion
+ * in the background.
+ * <p>
+ * Calls must go through an OkHttp client created by {@link #createOkHttpClient()}. It hands
+ * each new call to the subscription running on the current thread, which is how a Retrofit
+ * call several layers down is tied back to the Observable that started it.
+ */
+class CancellableCalls {
+    private static final ThreadLocal<Cancellation> sCurrentCancellation = new ThreadLocal<>();
+
+    private CancellableCalls() {
+    }
+
+    static OkHttpClient createOkHttpClient() {
+        return new OkHttpClient() {
+            @Override
+            public Call newCall(final Request request) {
+                final Call call = super.newCall(request);
+                final Cancellation cancellation = sCurrentCancellation.get();
+                if (cancellation != null) {
+                    cancellation.setCall(call);
+                }
+                return call;
+            }
+        };
+    }
+
+    /**
+     * Wrap a blocking call, such as a synchronous Retrofit method. The call runs on the I/O
+     * scheduler once per subscription.
+     */
+    static <T> Observable<T> fromBlockingCall(final Func0<T> blockingCall) {
+        return Observable.<T>create(subscriber -> {
+            final Cancellation cancellation = new Cancellation();
+            subscriber.add(Subscriptions.create(cancellation::cancel));
+
+            T result = null;
+            RuntimeException error = null;
+            sCurrentCancellation.set(cancellation);
+            try {
+                result = blockingCall.call();
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                sCurrentCancellation.remove();
+                cancellation.setCall(null);
+            }
+
+            // Emit only once the call is detached: operators such as retryWhen unsubscribe
+            // while handling onError, which must not count as cancelling a finished call. A
+            // cancelled call fails with an I/O error nobody is listening for any more.
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onNext(result);
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Links one subscription to the HTTP call it is currently waiting on, if any.
+     */
+    private static class Cancellation {
+        private Call mCall;
+        private boolean mIsCancelled;
+
+        synchronized void setCall(final Call call) {
+            mCall = call;
+            if (mIsCancelled && call != null) {
+                call.cancel();
+            }
+        }
+
+        synchronized void cancel() {
+            if (mIsCancelled) {
+                return;
+            }
+            mIsCancelled = true;
+            if (mCall != null) {
+                mCall.cancel();
+                WeatherMetrics.recordCancellation();
+            }
+        }
+    }
+}
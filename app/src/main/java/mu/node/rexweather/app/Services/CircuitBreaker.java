@@ -0,0 +1,60 @@
+package mu.node.rexweather.app.Services;
+
+import android.os.SystemClock;
+
+/**
+ * Circuit breaker for a single web service endpoint.
+ * <p>
+ * After a run of consecutive failures the breaker opens and rejects requests for a cool-down
+ * period. Once that has passed a single trial request is let through: if it succeeds the breaker
+ * closes again, otherwise it re-opens for another cool-down period.
+ */
+public class CircuitBreaker {
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int mFailureThreshold;
+    private final long mOpenDurationMillis;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+
+    public CircuitBreaker(final int failureThreshold, final long openDurationMillis) {
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMillis = openDurationMillis;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (mState == State.CLOSED) {
+            return true;
+        }
+
+        // Let a single trial request through per cool-down period.
+        final long now = SystemClock.elapsedRealtime();
+        if (now - mOpenedAt < mOpenDurationMillis) {
+            return false;
+        }
+        mState = State.HALF_OPEN;
+        mOpenedAt = now;
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        mState = State.CLOSED;
+        mConsecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            mState = State.OPEN;
+            mOpenedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return mState != State.CLOSED;
+    }
+}
@@ -0,0 +1,13 @@
+package mu.node.rexweather.app.Services;
+
+import org.apache.http.HttpException;
+
+/**
+ * Raised instead of issuing a request while the circuit breaker for its endpoint is open.
+ */
+public class CircuitBreakerOpenException extends HttpException {
+
+    public CircuitBreakerOpenException(final String endpoint) {
+        super("Requests to " + endpoint + " are suspended after repeated failures.");
+    }
+}
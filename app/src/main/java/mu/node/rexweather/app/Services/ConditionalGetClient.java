@@ -0,0 +1,143 @@
+package mu.node.rexweather.app.Services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import retrofit.RetrofitError;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+
+/**
+ * Makes GET requests conditional on the response having changed since it was last fetched.
+ * <p>
+ * The ETag and Last-Modified validators of every successful response are kept per request key
+ * and sent back as If-None-Match and If-Modified-Since the next time a request with the same key
+ * is made. An unchanged response then comes back as an empty 304, which Retrofit reports as an
+ * HTTP error (see {@link #isNotModified(RetrofitError)}); the caller is expected to carry on
+ * with the domain objects it already holds for that key, so nothing is downloaded or parsed.
+ * <p>
+ * Callers pass the key in the {@value #REQUEST_KEY_HEADER} header, which is removed before the
+ * request goes out, so that the validators line up with whatever the domain objects are cached
+ * by; requests without it are keyed by URL. Requests for different URLs under the same key
+ * simply get a 200 when the server does not recognise the validators.
+ * <p>
+ * Requests that carry validators bypass the HTTP client's own response cache, so the two do not
+ * both revalidate the same response. Without validators for a key, e.g. after a restart, the
+ * response cache may still answer or revalidate the request itself.
+ * <p>
+ * Requests sent with {@code Cache-Control: no-store} are passed through untouched, for callers
+ * that keep no domain objects to fall back on.
+ */
+class ConditionalGetClient implements Client {
+    static final String REQUEST_KEY_HEADER = "X-Request-Key";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final Client mClient;
+    private final ConcurrentHashMap<String, Validators> mValidators = new ConcurrentHashMap<>();
+
+    ConditionalGetClient(final Client client) {
+        mClient = client;
+    }
+
+    @Override
+    public Response execute(final Request request) throws IOException {
+        if (!"GET".equals(request.getMethod()) || isNoStore(request)) {
+            return mClient.execute(request);
+        }
+
+        final List<Header> headers = new ArrayList<>(request.getHeaders());
+        String requestKey = request.getUrl();
+        for (int i = 0; i < headers.size(); i++) {
+            if (REQUEST_KEY_HEADER.equalsIgnoreCase(headers.get(i).getName())) {
+                requestKey = headers.remove(i).getValue();
+                break;
+            }
+        }
+
+        final Validators validators = mValidators.get(requestKey);
+        if (validators != null) {
+            addConditions(headers, validators);
+        }
+        final Response response = mClient.execute(
+                new Request(request.getMethod(), request.getUrl(), headers, request.getBody()));
+
+        if (response.getStatus() == HTTP_NOT_MODIFIED && validators != null) {
+            WeatherMetrics.recordNotModified(validators.bodyLength);
+        } else if (response.getStatus() == HTTP_OK) {
+            rememberValidators(requestKey, response);
+        }
+        return response;
+    }
+
+    /**
+     * Stop sending validators for a request key, so that its next request fetches a full
+     * response. Use this when the domain objects from the previous response are no longer at
+     * hand.
+     */
+    void forget(final String requestKey) {
+        mValidators.remove(requestKey);
+    }
+
+    static boolean isNotModified(final RetrofitError error) {
+        return error.getKind() == RetrofitError.Kind.HTTP
+                && error.getResponse() != null
+                && error.getResponse().getStatus() == HTTP_NOT_MODIFIED;
+    }
+
+    private static boolean isNoStore(final Request request) {
+        for (Header header : request.getHeaders()) {
+            if ("Cache-Control".equalsIgnoreCase(header.getName())
+                    && header.getValue() != null && header.getValue().contains("no-store")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addConditions(final List<Header> headers, final Validators validators) {
+        if (validators.entityTag != null) {
+            headers.add(new Header("If-None-Match", validators.entityTag));
+        }
+        if (validators.lastModified != null) {
+            headers.add(new Header("If-Modified-Since", validators.lastModified));
+        }
+    }
+
+    private void rememberValidators(final String requestKey, final Response response) {
+        String entityTag = null;
+        String lastModified = null;
+        for (Header header : response.getHeaders()) {
+            if ("ETag".equalsIgnoreCase(header.getName())) {
+                entityTag = header.getValue();
+            } else if ("Last-Modified".equalsIgnoreCase(header.getName())) {
+                lastModified = header.getValue();
+            }
+        }
+
+        if (entityTag == null && lastModified == null) {
+            mValidators.remove(requestKey);
+            return;
+        }
+        final long bodyLength = response.getBody() != null ? response.getBody().length() : 0;
+        mValidators.put(requestKey,
+                new Validators(entityTag, lastModified, Math.max(bodyLength, 0)));
+    }
+
+    private static class Validators {
+        final String entityTag;
+        final String lastModified;
+        final long bodyLength;  // Bytes a 304 saves us from downloading.
+
+        Validators(final String entityTag, final String lastModified, final long bodyLength) {
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.bodyLength = bodyLength;
+        }
+    }
+}
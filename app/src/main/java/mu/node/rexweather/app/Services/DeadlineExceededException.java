@@ -0,0 +1,13 @@
+package mu.node.rexweather.app.Services;
+
+import org.apache.http.HttpException;
+
+/**
+ * Raised when a refresh runs out of time and there is no cached data to fall back on.
+ */
+public class DeadlineExceededException extends HttpException {
+
+    public DeadlineExceededException() {
+        super("Weather data could not be fetched in time.");
+    }
+}
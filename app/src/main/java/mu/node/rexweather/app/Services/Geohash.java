@@ -0,0 +1,119 @@
+package mu.node.rexweather.app.Services;
+
+/**
+ * Minimal geohash encoder. Used to bucket nearby coordinates into the same cache cell so that
+ * small movements of the device do not defeat the weather cache.
+ * <p>
+ * Geohashes sharing a prefix lie in the same larger cell, so a sorted map keyed by geohash
+ * doubles as a spatial index: everything within a cell is one contiguous key range.
+ */
+public class Geohash {
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    /**
+     * Encode a coordinate into a geohash of the given length. A precision of 5 gives cells of
+     * roughly 4.9 km x 4.9 km, which is finer than the resolution of the weather data itself.
+     */
+    public static String encode(final double longitude, final double latitude,
+                                final int precision) {
+        final char[] hash = new char[precision];
+        double minLongitude = -180, maxLongitude = 180;
+        double minLatitude = -90, maxLatitude = 90;
+        boolean isLongitudeBit = true;
+        int bit = 0;
+        int character = 0;
+        int length = 0;
+
+        while (length < precision) {
+            if (isLongitudeBit) {
+                final double mid = (minLongitude + maxLongitude) / 2;
+                if (longitude >= mid) {
+                    character = (character << 1) | 1;
+                    minLongitude = mid;
+                } else {
+                    character = character << 1;
+                    maxLongitude = mid;
+                }
+            } else {
+                final double mid = (minLatitude + maxLatitude) / 2;
+                if (latitude >= mid) {
+                    character = (character << 1) | 1;
+                    minLatitude = mid;
+                } else {
+                    character = character << 1;
+                    maxLatitude = mid;
+                }
+            }
+            isLongitudeBit = !isLongitudeBit;
+
+            if (++bit == 5) {
+                hash[length++] = BASE32[character];
+                bit = 0;
+                character = 0;
+            }
+        }
+
+        return new String(hash);
+    }
+
+    /**
+     * Coordinate of the center of a geohash cell, as {longitude, latitude}.
+     */
+    public static double[] decodeCenter(final String hash) {
+        double minLongitude = -180, maxLongitude = 180;
+        double minLatitude = -90, maxLatitude = 90;
+        boolean isLongitudeBit = true;
+
+        for (int i = 0; i < hash.length(); i++) {
+            final int character = indexOf(hash.charAt(i));
+            for (int bit = 4; bit >= 0; bit--) {
+                final boolean isSet = ((character >> bit) & 1) == 1;
+                if (isLongitudeBit) {
+                    final double mid = (minLongitude + maxLongitude) / 2;
+                    if (isSet) {
+                        minLongitude = mid;
+                    } else {
+                        maxLongitude = mid;
+                    }
+                } else {
+                    final double mid = (minLatitude + maxLatitude) / 2;
+                    if (isSet) {
+                        minLatitude = mid;
+                    } else {
+                        maxLatitude = mid;
+                    }
+                }
+                isLongitudeBit = !isLongitudeBit;
+            }
+        }
+
+        return new double[]{(minLongitude + maxLongitude) / 2, (minLatitude + maxLatitude) / 2};
+    }
+
+    /**
+     * Width in degrees of longitude of the cells of the given precision.
+     */
+    public static double getCellWidth(final int precision) {
+        // Bits alternate starting with longitude, so longitude gets the extra bit of odd counts.
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /**
+     * Height in degrees of latitude of the cells of the given precision.
+     */
+    public static double getCellHeight(final int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    private static int indexOf(final char character) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == character) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid geohash character: " + character);
+    }
+}
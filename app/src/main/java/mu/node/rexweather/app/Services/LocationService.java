@@ -5,34 +5,107 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
+import rx.Scheduler;
 import rx.Subscriber;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.SerialSubscription;
+import rx.subscriptions.Subscriptions;
 
 /**
  * Implement an Rx-style location service by wrapping the Android LocationManager and providing
  * the location result as an Observable.
+ * <p>
+ * Location callbacks are delivered on one dedicated thread shared by every instance, so
+ * subscribing never parks a scheduler thread in a looper. A recent enough last known fix is
+ * returned straight away; otherwise subscribers share a single coarse location update.
+ * <p>
+ * A last known fix is refined in the background, for a limited time, until
+ * {@link #cancelRefinement()} is called by whoever owns this service.
  */
 public class LocationService {
+    private static final String TAG = LocationService.class.getCanonicalName();
+    private static final long LAST_KNOWN_LOCATION_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long REFINEMENT_TIMEOUT_SECONDS = 30;
+
+    private static HandlerThread sLocationThread;
+
     private final LocationManager mLocationManager;
+    private final Scheduler mScheduler;
+    private final Observable<Location> mLocationUpdate;
+    private final SerialSubscription mRefinementSubscription = new SerialSubscription();
 
     public LocationService(LocationManager locationManager) {
+        this(locationManager, Schedulers.computation());
+    }
+
+    /**
+     * @param scheduler the scheduler that times out background refinement.
+     */
+    LocationService(final LocationManager locationManager, final Scheduler scheduler) {
         mLocationManager = locationManager;
+        mScheduler = scheduler;
+        mLocationUpdate = Observable.<Location>create(this::requestSingleUpdate).share();
     }
 
     public Observable<Location> getLocation() {
-        return Observable.create(subscriber -> getLocationListener(subscriber));
+        return Observable.defer(() -> {
+            final Location lastKnownLocation = getLastKnownLocation();
+            if (isFresh(lastKnownLocation)) {
+                refineInBackground();
+                return Observable.just(lastKnownLocation);
+            }
+            return mLocationUpdate;
+        });
     }
 
+    /**
+     * Stop refining the location in the background, e.g. when the screen that requested it goes
+     * away. Locations can still be requested afterwards, but are no longer refined.
+     */
+    public void cancelRefinement() {
+        mRefinementSubscription.unsubscribe();
+    }
 
-    private void getLocationListener(final Subscriber<? super Location> subscriber) {
+    /**
+     * Refine the fix in the background so the next request starts from a better one. Gives up
+     * after a while rather than keep the provider running where no fix can be had, e.g.
+     * indoors. A new refinement takes over from the previous one, sharing its location update.
+     */
+    private void refineInBackground() {
+        mRefinementSubscription.set(mLocationUpdate
+                .timeout(REFINEMENT_TIMEOUT_SECONDS, TimeUnit.SECONDS, mScheduler)
+                .subscribe(location -> {
+                }, error -> Log.w(TAG, "Could not refine location", error)));
+    }
+
+    /**
+     * Last fix known to the best coarse provider, however old, or null if there is none. Does
+     * not request a location update.
+     */
+    public Location getLastKnownLocation() {
+        final String locationProvider = getBestProvider();
+        return locationProvider != null
+                ? mLocationManager.getLastKnownLocation(locationProvider) : null;
+    }
+
+    private static boolean isFresh(final Location location) {
+        return location != null
+                && System.currentTimeMillis() - location.getTime()
+                < LAST_KNOWN_LOCATION_MAX_AGE_MILLIS;
+    }
+
+    private void requestSingleUpdate(final Subscriber<? super Location> subscriber) {
         final LocationListener locationListener = new LocationListener() {
             public void onLocationChanged(final Location location) {
                 subscriber.onNext(location);
                 subscriber.onCompleted();
-
-                Looper.myLooper().quit();
             }
 
             public void onStatusChanged(String provider, int status, Bundle extras) {
@@ -45,17 +118,23 @@ public class LocationService {
             }
         };
 
+        mLocationManager.requestSingleUpdate(getBestProvider(),
+                locationListener, getLocationLooper());
+        subscriber.add(Subscriptions.create(() -> mLocationManager.removeUpdates(locationListener)));
+    }
+
+    private String getBestProvider() {
         final Criteria locationCriteria = new Criteria();
         locationCriteria.setAccuracy(Criteria.ACCURACY_COARSE);
         locationCriteria.setPowerRequirement(Criteria.POWER_LOW);
-        final String locationProvider = mLocationManager
-                .getBestProvider(locationCriteria, true);
-
-        Looper.prepare();
-
-        mLocationManager.requestSingleUpdate(locationProvider,
-                locationListener, Looper.myLooper());
+        return mLocationManager.getBestProvider(locationCriteria, true);
+    }
 
-        Looper.loop();
+    private static synchronized Looper getLocationLooper() {
+        if (sLocationThread == null) {
+            sLocationThread = new HandlerThread("LocationService");
+            sLocationThread.start();
+        }
+        return sLocationThread.getLooper();
     }
-}
\ No newline at end of file
+}
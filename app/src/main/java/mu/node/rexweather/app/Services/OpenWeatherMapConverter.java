@@ -0,0 +1,385 @@
+package mu.node.rexweather.app.Services;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.apache.http.HttpException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.HourlyForecast;
+import mu.node.rexweather.app.Models.WeatherDescriptions;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.converter.GsonConverter;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Streaming decoder for Open Weather Map responses.
+ * <p>
+ * Reads the response body token by token and builds the domain models directly, skipping every
+ * field we do not display. No intermediate envelope objects are created.
+ */
+class OpenWeatherMapConverter implements Converter {
+    private static final int HTTP_OK = 200;
+    private static final int INITIAL_FORECAST_CAPACITY = 16;
+    private static final int INITIAL_HOURLY_FORECAST_CAPACITY = 40;
+
+    private final Converter mBodyConverter = new GsonConverter(new Gson());
+
+    @Override
+    public Object fromBody(final TypedInput body, final Type type) throws ConversionException {
+        final long startNanos = WeatherMetrics.start();
+        InputStream inputStream = null;
+        try {
+            inputStream = body.in();
+            final JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+            final Object result = decode(reader, type);
+            WeatherMetrics.record(WeatherMetrics.Stage.PARSE, startNanos);
+            return result;
+        } catch (IOException | IllegalStateException | NumberFormatException | HttpException e) {
+            throw new ConversionException(e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Request bodies are rare and small, so they are encoded by Retrofit's Gson converter.
+     */
+    @Override
+    public TypedOutput toBody(final Object object) {
+        return mBodyConverter.toBody(object);
+    }
+
+    private static Object decode(final JsonReader reader, final Type type)
+            throws IOException, HttpException, ConversionException {
+
+        if (type == CurrentWeather.class) {
+            return readCurrentWeather(reader);
+        } else if (isListOf(type, CurrentWeather.class)) {
+            return readCurrentWeatherList(reader);
+        } else if (isListOf(type, WeatherForecast.class)) {
+            return readWeatherForecasts(reader);
+        } else if (type == HourlyForecast.class) {
+            return readHourlyForecast(reader);
+        }
+        throw new ConversionException("Cannot decode responses of type " + type);
+    }
+
+    private static boolean isListOf(final Type type, final Class<?> elementClass) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        final ParameterizedType parameterizedType = (ParameterizedType) type;
+        return parameterizedType.getRawType() == List.class
+                && parameterizedType.getActualTypeArguments()[0] == elementClass;
+    }
+
+    private static CurrentWeather readCurrentWeather(final JsonReader reader)
+            throws IOException, HttpException {
+
+        int httpCode = HTTP_OK;
+        String locationName = null;
+        long timestamp = 0;
+        String description = null;
+        float temperature = 0;
+        float minimumTemperature = 0;
+        float maximumTemperature = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cod":
+                    httpCode = reader.nextInt();
+                    break;
+                case "name":
+                    locationName = reader.nextString();
+                    break;
+                case "dt":
+                    timestamp = reader.nextLong();
+                    break;
+                case "weather":
+                    description = readFirstDescription(reader);
+                    break;
+                case "main":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "temp":
+                                temperature = (float) reader.nextDouble();
+                                break;
+                            case "temp_min":
+                                minimumTemperature = (float) reader.nextDouble();
+                                break;
+                            case "temp_max":
+                                maximumTemperature = (float) reader.nextDouble();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkHttpCode(httpCode);
+        return new CurrentWeather(locationName, timestamp, description, temperature,
+                minimumTemperature, maximumTemperature);
+    }
+
+    /**
+     * Decode a group response, which holds a list of current weather objects, one per city.
+     */
+    private static List<CurrentWeather> readCurrentWeatherList(final JsonReader reader)
+            throws IOException, HttpException {
+
+        int httpCode = HTTP_OK;
+        final List<CurrentWeather> currentWeatherList = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cod":
+                    httpCode = reader.nextInt();
+                    break;
+                case "list":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        currentWeatherList.add(readCurrentWeather(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkHttpCode(httpCode);
+        return currentWeatherList;
+    }
+
+    private static List<WeatherForecast> readWeatherForecasts(final JsonReader reader)
+            throws IOException, HttpException {
+
+        int httpCode = HTTP_OK;
+        String locationName = null;
+
+        // The city name may come after the list, so hold the entries in primitive columns until
+        // the whole object has been read.
+        int count = 0;
+        long[] timestamps = new long[INITIAL_FORECAST_CAPACITY];
+        String[] descriptions = new String[INITIAL_FORECAST_CAPACITY];
+        float[] minimumTemperatures = new float[INITIAL_FORECAST_CAPACITY];
+        float[] maximumTemperatures = new float[INITIAL_FORECAST_CAPACITY];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cod":
+                    httpCode = reader.nextInt();
+                    break;
+                case "city":
+                    locationName = readName(reader);
+                    break;
+                case "list":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (count == timestamps.length) {
+                            final int capacity = count * 2;
+                            timestamps = Arrays.copyOf(timestamps, capacity);
+                            descriptions = Arrays.copyOf(descriptions, capacity);
+                            minimumTemperatures = Arrays.copyOf(minimumTemperatures, capacity);
+                            maximumTemperatures = Arrays.copyOf(maximumTemperatures, capacity);
+                        }
+
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "dt":
+                                    timestamps[count] = reader.nextLong();
+                                    break;
+                                case "weather":
+                                    descriptions[count] = readFirstDescription(reader);
+                                    break;
+                                case "temp":
+                                    reader.beginObject();
+                                    while (reader.hasNext()) {
+                                        switch (reader.nextName()) {
+                                            case "min":
+                                                minimumTemperatures[count] =
+                                                        (float) reader.nextDouble();
+                                                break;
+                                            case "max":
+                                                maximumTemperatures[count] =
+                                                        (float) reader.nextDouble();
+                                                break;
+                                            default:
+                                                reader.skipValue();
+                                        }
+                                    }
+                                    reader.endObject();
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        count++;
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkHttpCode(httpCode);
+        final List<WeatherForecast> weatherForecasts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            weatherForecasts.add(new WeatherForecast(locationName, timestamps[i],
+                    descriptions[i], minimumTemperatures[i], maximumTemperatures[i]));
+        }
+        return weatherForecasts;
+    }
+
+    private static HourlyForecast readHourlyForecast(final JsonReader reader)
+            throws IOException, HttpException {
+
+        int httpCode = HTTP_OK;
+        String locationName = null;
+        int count = 0;
+        long[] timestamps = new long[INITIAL_HOURLY_FORECAST_CAPACITY];
+        float[] temperatures = new float[INITIAL_HOURLY_FORECAST_CAPACITY];
+        short[] descriptionCodes = new short[INITIAL_HOURLY_FORECAST_CAPACITY];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cod":
+                    httpCode = reader.nextInt();
+                    break;
+                case "city":
+                    locationName = readName(reader);
+                    break;
+                case "list":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (count == timestamps.length) {
+                            final int capacity = count * 2;
+                            timestamps = Arrays.copyOf(timestamps, capacity);
+                            temperatures = Arrays.copyOf(temperatures, capacity);
+                            descriptionCodes = Arrays.copyOf(descriptionCodes, capacity);
+                        }
+                        // Not every entry has a weather array.
+                        descriptionCodes[count] = WeatherDescriptions.NONE;
+
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "dt":
+                                    timestamps[count] = reader.nextLong();
+                                    break;
+                                case "weather":
+                                    descriptionCodes[count] = WeatherDescriptions.intern(
+                                            readFirstDescription(reader));
+                                    break;
+                                case "main":
+                                    reader.beginObject();
+                                    while (reader.hasNext()) {
+                                        if ("temp".equals(reader.nextName())) {
+                                            temperatures[count] = (float) reader.nextDouble();
+                                        } else {
+                                            reader.skipValue();
+                                        }
+                                    }
+                                    reader.endObject();
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        count++;
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkHttpCode(httpCode);
+        return new HourlyForecast(locationName, count, timestamps, temperatures,
+                descriptionCodes);
+    }
+
+    private static String readName(final JsonReader reader) throws IOException {
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("name".equals(reader.nextName())) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return name;
+    }
+
+    private static String readFirstDescription(final JsonReader reader) throws IOException {
+        String description = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (description != null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("description".equals(reader.nextName())) {
+                    description = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return description;
+    }
+
+    /**
+     * The web service always returns a HTTP header code of 200 and communicates errors
+     * through a 'cod' field in the JSON payload of the response body.
+     */
+    private static void checkHttpCode(final int httpCode) throws WebServiceException {
+        if (httpCode != HTTP_OK) {
+            throw new WebServiceException(httpCode);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package mu.node.rexweather.app.Services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Single-flight request coalescing.
+ * <p>
+ * While a request for a key is in flight, further callers asking for the same key subscribe to
+ * the same Observable instead of issuing their own request. The result is replayed to every one
+ * of them and the key is released as soon as the request terminates.
+ * <p>
+ * The shared request keeps running for as long as anyone is subscribed to it. Once every caller
+ * has unsubscribed, it is unsubscribed from as well, so that cancellation still reaches the
+ * underlying call.
+ */
+public class RequestCoalescer {
+    private final ConcurrentHashMap<String, Observable<?>> mInFlightRequests =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mCoalescedRequestCount = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> coalesce(final String key, final Func0<Observable<T>> request) {
+        return Observable.defer(() -> {
+            final Observable<T> inFlightRequest = (Observable<T>) mInFlightRequests.get(key);
+            if (inFlightRequest != null) {
+                mCoalescedRequestCount.incrementAndGet();
+                return inFlightRequest;
+            }
+
+            // Release the key only while it still maps to this request, since a new request may
+            // have taken it over between termination and the unsubscribe that follows.
+            final Object[] sharedRequestHolder = new Object[1];
+            final Observable<T> sharedRequest = request.call()
+                    .doOnTerminate(() -> mInFlightRequests.remove(key, sharedRequestHolder[0]))
+                    .doOnUnsubscribe(() -> mInFlightRequests.remove(key, sharedRequestHolder[0]))
+                    .replay()
+                    .refCount();
+            sharedRequestHolder[0] = sharedRequest;
+            final Observable<T> existingRequest =
+                    (Observable<T>) mInFlightRequests.putIfAbsent(key, sharedRequest);
+            if (existingRequest != null) {
+                mCoalescedRequestCount.incrementAndGet();
+                return existingRequest;
+            }
+            return sharedRequest;
+        });
+    }
+
+    /**
+     * Number of callers that were served by joining a request already in flight.
+     */
+    public long getCoalescedRequestCount() {
+        return mCoalescedRequestCount.get();
+    }
+}
@@ -0,0 +1,129 @@
+package mu.node.rexweather.app.Services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mu.node.rexweather.app.Helpers.LatencyHistogram;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+
+/**
+ * Hedged requests, to cut tail latency.
+ * <p>
+ * When a request has not answered within the hedge delay, an identical second request is
+ * started and whichever answers first wins. The other one is unsubscribed from, which cancels
+ * its call. The hedge delay is the observed 95th percentile latency, so only about one request
+ * in twenty is hedged; until enough latencies have been observed a fixed delay is used instead.
+ * On top of that, hedges are capped at a fixed share of all requests, so a service that slows
+ * down across the board does not get twice the load. One hedge is allowed up front, so that the
+ * first slow requests can be hedged before the share has built up.
+ * <p>
+ * The latency of every first request is recorded, hedged or not and whether or not hedging is
+ * enabled. A first request that loses to its hedge is recorded with the time it had been running
+ * when it was cancelled, a lower bound on its latency. Hedges themselves are not recorded: they
+ * only run for slow requests and would skew the distribution.
+ * <p>
+ * Hedging is off until enabled with {@link #setEnabled(boolean)}.
+ */
+class RequestHedger {
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final int MIN_SAMPLES = 20;
+    private static final int INITIAL_HEDGE_BUDGET = 1;
+    private static final long NANOSECONDS_IN_MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final double mMaxHedgeRatio;
+    private final long mDefaultHedgeDelayMillis;
+    private final Scheduler mScheduler;
+    private final LatencyHistogram mLatencies = new LatencyHistogram();
+
+    private volatile boolean mIsEnabled;
+    private long mRequestCount;
+    private long mHedgeCount;
+
+    /**
+     * @param maxHedgeRatio           the largest share of requests that may be hedged, e.g. 0.1.
+     * @param defaultHedgeDelayMillis the hedge delay until enough latencies have been observed.
+     * @param scheduler               the scheduler that times the hedge delay and latencies.
+     */
+    RequestHedger(final double maxHedgeRatio, final long defaultHedgeDelayMillis,
+                  final Scheduler scheduler) {
+        mMaxHedgeRatio = maxHedgeRatio;
+        mDefaultHedgeDelayMillis = defaultHedgeDelayMillis;
+        mScheduler = scheduler;
+    }
+
+    void setEnabled(final boolean enabled) {
+        mIsEnabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * Wrap a request so that it is hedged while hedging is enabled. The request must be safe to
+     * issue twice, and each subscription must issue it anew.
+     */
+    <T> Observable<T> hedge(final Observable<T> request) {
+        return Observable.defer(() -> {
+            if (!mIsEnabled) {
+                return timed(request);
+            }
+            synchronized (this) {
+                mRequestCount++;
+            }
+
+            final Observable<T> hedgedRequest = Observable
+                    .timer(getHedgeDelayMillis(), TimeUnit.MILLISECONDS, mScheduler)
+                    .flatMap(tick -> tryStartHedge() ? request : Observable.<T>never());
+            return Observable.amb(timed(request), hedgedRequest);
+        });
+    }
+
+    synchronized long getRequestCount() {
+        return mRequestCount;
+    }
+
+    synchronized long getHedgeCount() {
+        return mHedgeCount;
+    }
+
+    /**
+     * The delay after which a request is hedged, in milliseconds.
+     */
+    long getHedgeDelayMillis() {
+        if (mLatencies.getCount() < MIN_SAMPLES) {
+            return mDefaultHedgeDelayMillis;
+        }
+        return (long) Math.ceil(mLatencies.getPercentileMillis(HEDGE_PERCENTILE));
+    }
+
+    private synchronized boolean tryStartHedge() {
+        if (mHedgeCount + 1 > INITIAL_HEDGE_BUDGET + mMaxHedgeRatio * mRequestCount) {
+            return false;
+        }
+        mHedgeCount++;
+        return true;
+    }
+
+    /**
+     * Record how long a request took to answer, or how long it had been running when it was
+     * unsubscribed from without answering.
+     */
+    private <T> Observable<T> timed(final Observable<T> request) {
+        return Observable.defer(() -> {
+            final long startMillis = mScheduler.now();
+            final AtomicBoolean isRecorded = new AtomicBoolean();
+            final Action0 recordLatency = () -> {
+                if (isRecorded.compareAndSet(false, true)) {
+                    mLatencies.recordNanos(
+                            (mScheduler.now() - startMillis) * NANOSECONDS_IN_MILLISECOND);
+                }
+            };
+            return request
+                    .doOnNext(result -> recordLatency.call())
+                    .doOnUnsubscribe(recordLatency);
+        });
+    }
+}
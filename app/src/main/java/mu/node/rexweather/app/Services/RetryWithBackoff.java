@@ -0,0 +1,49 @@
+package mu.node.rexweather.app.Services;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Retry handler for {@link Observable#retryWhen(Func1)}.
+ * <p>
+ * Retryable failures are retried up to a maximum number of times, waiting a random delay of up
+ * to {@code baseDelay * 2^attempt} (capped) before each attempt. The random "full jitter" keeps
+ * clients that failed together from retrying in lockstep. Fatal failures are passed straight on.
+ */
+public class RetryWithBackoff
+        implements Func1<Observable<? extends Throwable>, Observable<?>> {
+
+    private final int mMaxRetries;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Func1<Throwable, Boolean> mIsRetryable;
+
+    public RetryWithBackoff(final int maxRetries,
+                            final long baseDelayMillis,
+                            final long maxDelayMillis,
+                            final Func1<Throwable, Boolean> isRetryable) {
+        mMaxRetries = maxRetries;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mIsRetryable = isRetryable;
+    }
+
+    @Override
+    public Observable<?> call(final Observable<? extends Throwable> errors) {
+        final int[] retries = {0};
+        return errors.flatMap(error -> {
+            if (retries[0] >= mMaxRetries || !mIsRetryable.call(error)) {
+                return Observable.error(error);
+            }
+            final long delay = getDelayMillis(retries[0]++);
+            return Observable.timer(delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private long getDelayMillis(final int retry) {
+        final long exponentialDelay = mBaseDelayMillis << Math.min(retry, 30);
+        return (long) (Math.random() * Math.min(mMaxDelayMillis, exponentialDelay));
+    }
+}
@@ -0,0 +1,357 @@
+package mu.node.rexweather.app.Services;
+
+import android.os.SystemClock;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.HourlyForecast;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * In-memory weather cache keyed by geohash cell. Each cell holds a {@link WeatherSnapshot}
+ * that is replaced, sharing its unchanged parts, whenever one of its parts is updated.
+ * <p>
+ * Current weather and the forecasts are tracked separately since they change at very
+ * different rates. Entries past their freshness window are still returned so that callers can
+ * render them immediately while a refresh runs in the background.
+ * <p>
+ * Cells are kept sorted by geohash, which makes the cache its own spatial index: the cells
+ * inside any coarser geohash cell form one key range. Nearest neighbour queries scan the few
+ * coarse cells that cover the search radius, so their cost depends on how many cells are cached
+ * nearby rather than on the size of the cache. Once full, the cell filled longest ago is
+ * evicted in constant time, so the cache can hold thousands of cells.
+ */
+public class WeatherCache {
+    private static final int CELL_PRECISION = 5;
+    // A cell holds a few kilobytes of forecasts, so this bounds the cache to a few megabytes.
+    private static final int DEFAULT_MAX_CELLS = 1024;
+    // Nearest neighbour queries scan up to this many coarse cells, e.g. a 3 x 3 block.
+    private static final int MAX_SEARCH_CELLS = 9;
+    private static final long CURRENT_WEATHER_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long FORECAST_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final double EARTH_RADIUS_KILOMETERS = 6371;
+    // Sorts after every geohash character, so prefix + this bounds the prefix's key range.
+    private static final char GEOHASH_RANGE_END = '~';
+
+    private final int mMaxCells;
+    private final ConcurrentSkipListMap<String, Entry> mEntries = new ConcurrentSkipListMap<>();
+    // Counted separately since the size of a skip list map takes a full traversal.
+    private final AtomicInteger mCellCount = new AtomicInteger();
+    // Filled entries, least recently filled first. Guarded by its own lock, which may be taken
+    // while holding an entry's lock but not the other way around.
+    private final LinkedHashMap<String, Entry> mFillOrder = new LinkedHashMap<>(16, 0.75f, true);
+
+    public WeatherCache() {
+        this(DEFAULT_MAX_CELLS);
+    }
+
+    WeatherCache(final int maxCells) {
+        mMaxCells = maxCells;
+    }
+
+    public static String getCellKey(final double longitude, final double latitude) {
+        return Geohash.encode(longitude, latitude, CELL_PRECISION);
+    }
+
+    /**
+     * Everything cached for a cell, or null if nothing is.
+     */
+    public WeatherSnapshot getSnapshot(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null ? entry.snapshot : null;
+    }
+
+    public CurrentWeather getCurrentWeather(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null ? entry.snapshot.getCurrentWeather() : null;
+    }
+
+    public boolean isCurrentWeatherFresh(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null && entry.snapshot.getCurrentWeather() != null
+                && now() - entry.currentWeatherFetchedAt < CURRENT_WEATHER_TTL_MILLIS;
+    }
+
+    public void putCurrentWeather(final String cellKey, final CurrentWeather currentWeather) {
+        update(cellKey, entry -> {
+            entry.snapshot = entry.snapshot.withCurrentWeather(currentWeather,
+                    System.currentTimeMillis());
+            entry.currentWeatherFetchedAt = now();
+        });
+    }
+
+    public List<WeatherForecast> getWeatherForecasts(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null ? entry.snapshot.getWeatherForecasts() : null;
+    }
+
+    public boolean isWeatherForecastsFresh(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null && entry.snapshot.getWeatherForecasts() != null
+                && now() - entry.weatherForecastsFetchedAt < FORECAST_TTL_MILLIS;
+    }
+
+    public void putWeatherForecasts(final String cellKey,
+                                    final List<WeatherForecast> weatherForecasts) {
+        update(cellKey, entry -> {
+            entry.snapshot = entry.snapshot.withWeatherForecasts(weatherForecasts,
+                    System.currentTimeMillis());
+            entry.weatherForecastsFetchedAt = now();
+        });
+    }
+
+    public HourlyForecast getHourlyForecast(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null ? entry.snapshot.getHourlyForecast() : null;
+    }
+
+    public boolean isHourlyForecastFresh(final String cellKey) {
+        final Entry entry = mEntries.get(cellKey);
+        return entry != null && entry.snapshot.getHourlyForecast() != null
+                && now() - entry.hourlyForecastFetchedAt < FORECAST_TTL_MILLIS;
+    }
+
+    public void putHourlyForecast(final String cellKey, final HourlyForecast hourlyForecast) {
+        update(cellKey, entry -> {
+            entry.snapshot = entry.snapshot.withHourlyForecast(hourlyForecast,
+                    System.currentTimeMillis());
+            entry.hourlyForecastFetchedAt = now();
+        });
+    }
+
+    /**
+     * Snapshot of the nearest cell within {@code radiusKilometers} of a location whose current
+     * weather was fetched less than {@code maxAgeMillis} ago, or null if there is none.
+     * <p>
+     * Distances are measured to the centers of cells, while their data may have been fetched
+     * anywhere in the cell. The data found can therefore be up to half a cell diagonal, about
+     * 3.5 km, farther away than the radius.
+     */
+    public WeatherSnapshot findNearestCurrentWeather(final double longitude,
+                                                     final double latitude,
+                                                     final double radiusKilometers,
+                                                     final long maxAgeMillis) {
+        final long now = now();
+        final Entry entry = findNearest(longitude, latitude, radiusKilometers,
+                candidate -> candidate.snapshot.getCurrentWeather() != null
+                        && now - candidate.currentWeatherFetchedAt < maxAgeMillis);
+        return entry != null ? entry.snapshot : null;
+    }
+
+    /**
+     * Snapshot of the nearest cell with a recent daily forecast, following the same rules as
+     * {@link #findNearestCurrentWeather(double, double, double, long)}.
+     */
+    public WeatherSnapshot findNearestWeatherForecasts(final double longitude,
+                                                       final double latitude,
+                                                       final double radiusKilometers,
+                                                       final long maxAgeMillis) {
+        final long now = now();
+        final Entry entry = findNearest(longitude, latitude, radiusKilometers,
+                candidate -> candidate.snapshot.getWeatherForecasts() != null
+                        && now - candidate.weatherForecastsFetchedAt < maxAgeMillis);
+        return entry != null ? entry.snapshot : null;
+    }
+
+    private Entry findNearest(final double longitude, final double latitude,
+                              final double radiusKilometers,
+                              final Func1<Entry, Boolean> isCandidate) {
+        // Bounding box of the search circle. A circle that reaches a pole, or gets close enough
+        // to one, spans every longitude.
+        final double angularRadius = radiusKilometers / EARTH_RADIUS_KILOMETERS;
+        final double latitudeRadius = Math.toDegrees(angularRadius);
+        final double minLatitude = clampLatitude(latitude - latitudeRadius);
+        final double maxLatitude = clampLatitude(latitude + latitudeRadius);
+        double minLongitude = -180;
+        double maxLongitude = 180;
+        if (minLatitude > -90 && maxLatitude < 90) {
+            final double sinLongitudeRadius =
+                    Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+            if (sinLongitudeRadius < 1) {
+                final double longitudeRadius = Math.toDegrees(Math.asin(sinLongitudeRadius));
+                minLongitude = longitude - longitudeRadius;
+                maxLongitude = longitude + longitudeRadius;
+            }
+        }
+
+        // Search the finest cells that cover the box with only a few of them.
+        int precision = CELL_PRECISION;
+        while (precision > 1
+                && getSampleCount(maxLatitude - minLatitude, Geohash.getCellHeight(precision))
+                * getSampleCount(maxLongitude - minLongitude, Geohash.getCellWidth(precision))
+                > MAX_SEARCH_CELLS) {
+            precision--;
+        }
+
+        // Sample the box at most a cell apart, including its edges, to hit every cell it
+        // overlaps.
+        final double cellWidth = Geohash.getCellWidth(precision);
+        final double cellHeight = Geohash.getCellHeight(precision);
+        final int latitudeSamples = getSampleCount(maxLatitude - minLatitude, cellHeight);
+        final int longitudeSamples = getSampleCount(maxLongitude - minLongitude, cellWidth);
+        final Set<String> prefixes = new HashSet<>();
+        for (int y = 0; y < latitudeSamples; y++) {
+            final double sampleLatitude = Math.min(minLatitude + y * cellHeight, maxLatitude);
+            for (int x = 0; x < longitudeSamples; x++) {
+                final double sampleLongitude =
+                        Math.min(minLongitude + x * cellWidth, maxLongitude);
+                prefixes.add(Geohash.encode(wrapLongitude(sampleLongitude), sampleLatitude,
+                        precision));
+            }
+        }
+
+        Entry nearestEntry = null;
+        double nearestDistance = radiusKilometers;
+        for (String prefix : prefixes) {
+            for (Entry entry : mEntries.subMap(prefix, prefix + GEOHASH_RANGE_END).values()) {
+                if (!isCandidate.call(entry)) {
+                    continue;
+                }
+                final double distance = getDistanceKilometers(longitude, latitude,
+                        entry.longitude, entry.latitude);
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearestEntry = entry;
+                }
+            }
+        }
+        return nearestEntry;
+    }
+
+    private static int getSampleCount(final double span, final double cellSize) {
+        return (int) Math.ceil(span / cellSize) + 1;
+    }
+
+    /**
+     * Great-circle distance between two coordinates, using the haversine formula.
+     */
+    private static double getDistanceKilometers(final double longitude1, final double latitude1,
+                                                final double longitude2, final double latitude2) {
+        final double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        final double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * EARTH_RADIUS_KILOMETERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double wrapLongitude(final double longitude) {
+        if (longitude >= 180) {
+            return longitude - 360;
+        } else if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+
+    private static double clampLatitude(final double latitude) {
+        return Math.max(-90, Math.min(90, latitude));
+    }
+
+    /**
+     * Apply an update to a cell's entry under its lock, creating the entry if needed. An entry
+     * evicted before the lock was taken is no longer in the cache, so the update moves on to the
+     * entry that replaces it rather than being lost.
+     */
+    private void update(final String cellKey, final Action1<Entry> update) {
+        while (true) {
+            final Entry entry = getOrCreateEntry(cellKey);
+            synchronized (entry) {
+                if (!entry.isEvicted) {
+                    update.call(entry);
+                    synchronized (mFillOrder) {
+                        mFillOrder.put(cellKey, entry);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private Entry getOrCreateEntry(final String cellKey) {
+        Entry entry = mEntries.get(cellKey);
+        if (entry == null) {
+            final Entry newEntry = new Entry(Geohash.decodeCenter(cellKey));
+            entry = mEntries.putIfAbsent(cellKey, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+                mCellCount.incrementAndGet();
+                // Keep evicting until back within bounds, since concurrent inserts may race for
+                // the same oldest entry.
+                while (mCellCount.get() > mMaxCells && evictOldestEntry()) {
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Evict the entry that was filled longest ago. Entries that have never been filled were only
+     * just created for an update that is about to fill them, and are not evicted. Returns false
+     * if no entry can be evicted.
+     */
+    private boolean evictOldestEntry() {
+        final String cellKey;
+        final Entry entry;
+        synchronized (mFillOrder) {
+            final Iterator<Map.Entry<String, Entry>> iterator = mFillOrder.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            final Map.Entry<String, Entry> oldest = iterator.next();
+            cellKey = oldest.getKey();
+            entry = oldest.getValue();
+        }
+        synchronized (entry) {
+            // Another eviction may have got here first, in which case there is nothing to do.
+            if (!entry.isEvicted) {
+                entry.isEvicted = true;
+                if (mEntries.remove(cellKey, entry)) {
+                    mCellCount.decrementAndGet();
+                }
+                synchronized (mFillOrder) {
+                    mFillOrder.remove(cellKey);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Weather data cached for a single geohash cell.
+     */
+    private static class Entry {
+        // Center of the cell, used as the location of its data for distance calculations.
+        private final double longitude;
+        private final double latitude;
+        // Replaced under the entry's lock, read without it.
+        private volatile WeatherSnapshot snapshot = WeatherSnapshot.EMPTY;
+        // Monotonic fetch times for freshness checks, unaffected by changes to the wall clock.
+        private volatile long currentWeatherFetchedAt;
+        private volatile long weatherForecastsFetchedAt;
+        private volatile long hourlyForecastFetchedAt;
+        // Set under the entry's lock once it has been removed from the cache.
+        private boolean isEvicted;
+
+        private Entry(final double[] center) {
+            longitude = center[0];
+            latitude = center[1];
+        }
+    }
+}
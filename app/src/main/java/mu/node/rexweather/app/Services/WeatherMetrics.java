@@ -0,0 +1,179 @@
+package mu.node.rexweather.app.Services;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mu.node.rexweather.app.BuildConfig;
+import mu.node.rexweather.app.Helpers.LatencyHistogram;
+
+/**
+ * Latency metrics for the stages of a weather refresh.
+ * <p>
+ * Call {@link #start()} at the beginning of a stage and pass the result to
+ * {@link #record(Stage, long)} at its end. Timestamps are taken from the monotonic clock. While
+ * metrics are disabled both calls return immediately without reading the clock.
+ */
+public class WeatherMetrics {
+
+    public enum Stage {
+        /** From subscribing to the location until a fix is available. */
+        LOCATION,
+        /** A current weather request: DNS, connect, server time, transfer and parsing. */
+        CURRENT_WEATHER_REQUEST,
+        /** A daily forecast request. */
+        DAILY_FORECAST_REQUEST,
+        /** A 3 hour step forecast request. */
+        HOURLY_FORECAST_REQUEST,
+        /** A multi-city group request. */
+        GROUP_REQUEST,
+        /** Decoding a response body. Also included in the request stages. */
+        PARSE,
+        /** From the results being ready to the main thread picking them up. */
+        MAIN_THREAD_HOP,
+        /** A whole refresh, from its start until the UI has been updated. */
+        REFRESH
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private static final LatencyHistogram[] sHistograms =
+            new LatencyHistogram[Stage.values().length];
+    private static final AtomicLongArray sTimeoutCounts =
+            new AtomicLongArray(Stage.values().length);
+    private static final AtomicLong sCancellationCount = new AtomicLong();
+    private static final AtomicLong sNotModifiedCount = new AtomicLong();
+    private static final AtomicLong sNotModifiedBytesSaved = new AtomicLong();
+    private static volatile boolean sEnabled = BuildConfig.DEBUG;
+
+    static {
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private WeatherMetrics() {
+    }
+
+    public static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Mark the start of a stage. Returns 0 while metrics are disabled.
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the end of a stage that began at {@code startNanos}, as returned by
+     * {@link #start()}.
+     */
+    public static void record(final Stage stage, final long startNanos) {
+        if (sEnabled && startNanos != 0) {
+            sHistograms[stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Record a stage that ran out of time: a location or socket timeout, or a refresh that missed
+     * its deadline.
+     */
+    public static void recordTimeout(final Stage stage) {
+        sTimeoutCounts.incrementAndGet(stage.ordinal());
+    }
+
+    public static long getTimeoutCount(final Stage stage) {
+        return sTimeoutCounts.get(stage.ordinal());
+    }
+
+    /**
+     * Record an HTTP call that was cancelled while in flight.
+     */
+    public static void recordCancellation() {
+        sCancellationCount.incrementAndGet();
+    }
+
+    public static long getCancellationCount() {
+        return sCancellationCount.get();
+    }
+
+    /**
+     * Record a 304 Not Modified response that stood in for a full response of
+     * {@code bytesSaved} bytes.
+     */
+    public static void recordNotModified(final long bytesSaved) {
+        sNotModifiedCount.incrementAndGet();
+        sNotModifiedBytesSaved.addAndGet(bytesSaved);
+    }
+
+    public static long getNotModifiedCount() {
+        return sNotModifiedCount.get();
+    }
+
+    public static long getNotModifiedBytesSaved() {
+        return sNotModifiedBytesSaved.get();
+    }
+
+    /**
+     * Parsing skipped thanks to 304 responses, estimated from the median parse time.
+     */
+    public static double getNotModifiedParseMillisSaved() {
+        return getNotModifiedCount() * getPercentileMillis(Stage.PARSE, 0.5);
+    }
+
+    public static long getCount(final Stage stage) {
+        return sHistograms[stage.ordinal()].getCount();
+    }
+
+    /**
+     * Latency of a stage at the given percentile, expressed as a fraction such as 0.95, in
+     * milliseconds. Returns 0 if the stage has not been recorded yet.
+     */
+    public static double getPercentileMillis(final Stage stage, final double fraction) {
+        return sHistograms[stage.ordinal()].getPercentileMillis(fraction);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : sHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < sTimeoutCounts.length(); i++) {
+            sTimeoutCounts.set(i, 0);
+        }
+        sCancellationCount.set(0);
+        sNotModifiedCount.set(0);
+        sNotModifiedBytesSaved.set(0);
+    }
+
+    /**
+     * Write a summary of every stage, e.g. for {@code adb shell dumpsys activity}.
+     */
+    public static void dump(final String prefix, final PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Weather refresh latency (ms)" + (sEnabled ? "" : " [disabled]") + ":");
+        for (Stage stage : Stage.values()) {
+            writer.print(prefix);
+            writer.print(String.format(Locale.US, "  %-24s n=%-6d", stage,
+                    getCount(stage)));
+            for (double percentile : PERCENTILES) {
+                writer.print(String.format(Locale.US, " p%-2d=%.1f", (int) (percentile * 100),
+                        getPercentileMillis(stage, percentile)));
+            }
+            writer.print(String.format(Locale.US, " timeouts=%d", getTimeoutCount(stage)));
+            writer.println();
+        }
+        writer.print(prefix);
+        writer.println("Cancelled calls: n=" + getCancellationCount());
+        writer.print(prefix);
+        writer.println(String.format(Locale.US,
+                "Not modified: n=%d, bytes saved=%d, parse time saved~%.1f ms",
+                getNotModifiedCount(), getNotModifiedBytesSaved(),
+                getNotModifiedParseMillisSaved()));
+    }
+}
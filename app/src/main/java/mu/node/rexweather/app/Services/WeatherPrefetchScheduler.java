@@ -0,0 +1,97 @@
+package mu.node.rexweather.app.Services;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Decides how long to wait between background refreshes of cached weather, so that the UI
+ * renders from warm data when it is next shown.
+ * <p>
+ * Each run subscribes to the prefetch and waits for it, so runs belong on a background thread.
+ * The prefetch emits a version of the data such as the observation time of the current weather.
+ * While the version stays the same the interval doubles up to a maximum, and it drops back to
+ * the base interval as soon as the data changes. Failed runs, and runs skipped because
+ * prefetching is not allowed at the moment (e.g. on low battery), back off the same way.
+ * <p>
+ * The caller waits out the interval itself, e.g. with an alarm set for
+ * {@link #getNextRunAtMillis()}, so that runs carry on while no part of the app is on screen.
+ */
+public class WeatherPrefetchScheduler {
+    private final Func0<Observable<Long>> mPrefetch;
+    private final Func0<Boolean> mIsPrefetchAllowed;
+    private final long mBaseIntervalMillis;
+    private final long mMaxIntervalMillis;
+    private final Func0<Long> mClock;
+
+    private long mIntervalMillis;
+    private long mNextRunAtMillis;
+    private boolean mHasVersion;
+    private long mVersion;
+
+    /**
+     * @param clock the clock that runs are timed by, in milliseconds, e.g. the elapsed realtime
+     *              that alarms are set on.
+     */
+    public WeatherPrefetchScheduler(final Func0<Observable<Long>> prefetch,
+                                    final Func0<Boolean> isPrefetchAllowed,
+                                    final long baseIntervalMillis,
+                                    final long maxIntervalMillis,
+                                    final Func0<Long> clock) {
+
+        mPrefetch = prefetch;
+        mIsPrefetchAllowed = isPrefetchAllowed;
+        mBaseIntervalMillis = baseIntervalMillis;
+        mMaxIntervalMillis = maxIntervalMillis;
+        mClock = clock;
+        mIntervalMillis = baseIntervalMillis;
+        mNextRunAtMillis = clock.call();
+    }
+
+    /**
+     * Run a prefetch if it is allowed and wait for it to finish. Returns the delay until the
+     * next run.
+     */
+    public synchronized long run() {
+        if (!mIsPrefetchAllowed.call()) {
+            return onRunFinished(false);
+        }
+
+        final Long version;
+        try {
+            // A prefetch that finds nothing to refresh, e.g. without a known location, completes
+            // empty and counts as unchanged.
+            version = mPrefetch.call().toBlocking().lastOrDefault(null);
+        } catch (RuntimeException e) {
+            return onRunFinished(false);
+        }
+
+        final boolean isChanged = version != null && (!mHasVersion || version != mVersion);
+        if (version != null) {
+            mHasVersion = true;
+            mVersion = version;
+        }
+        return onRunFinished(isChanged);
+    }
+
+    /**
+     * Delay from the last run to the next one.
+     */
+    public synchronized long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * Time on the clock at which the next run is due: the interval after the last run finished,
+     * or right away before the first run.
+     */
+    public synchronized long getNextRunAtMillis() {
+        return mNextRunAtMillis;
+    }
+
+    private long onRunFinished(final boolean isChanged) {
+        mIntervalMillis = isChanged
+                ? mBaseIntervalMillis : Math.min(mIntervalMillis * 2, mMaxIntervalMillis);
+        mNextRunAtMillis = mClock.call() + mIntervalMillis;
+        return mIntervalMillis;
+    }
+}
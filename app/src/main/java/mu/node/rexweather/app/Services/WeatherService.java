@@ -1,151 +1,559 @@
 package mu.node.rexweather.app.Services;
 
-import com.google.gson.annotations.SerializedName;
+import android.content.Context;
+import android.util.Log;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
 
 import org.apache.http.HttpException;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import mu.node.rexweather.app.BuildConfig;
 import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.HourlyForecast;
+import mu.node.rexweather.app.Models.SavedLocation;
 import mu.node.rexweather.app.Models.WeatherForecast;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
 import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+import retrofit.client.OkClient;
+import retrofit.converter.ConversionException;
 import retrofit.http.GET;
+import retrofit.http.Header;
+import retrofit.http.Headers;
 import retrofit.http.Query;
 import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
 
+/**
+ * Process-wide access to the Open Weather Map web service.
+ * <p>
+ * A single instance owns the HTTP client, its connection pool and on-disk response cache, the
+ * Retrofit proxy and the in-memory weather cache. Use {@link #getInstance(Context)} rather than
+ * building one per request.
+ */
 public class WeatherService {
     // We are implementing against version 2.5 of the Open Weather Map web service.
     private static final String WEB_SERVICE_BASE_URL = "http://api.openweathermap.org/data/2.5";
+    private static final String TAG = WeatherService.class.getCanonicalName();
+    private static final String HTTP_CACHE_DIRECTORY = "weather_http_cache";
+    private static final long HTTP_CACHE_SIZE_BYTES = 1024 * 1024;
+    // Every request goes to the same host, so this also caps concurrent requests per host.
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final int MAX_CITIES_PER_GROUP_REQUEST = 20;
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BASE_DELAY_MILLIS = 500;
+    private static final long RETRY_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(8);
+    private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_BREAKER_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_INTERNAL_SERVER_ERROR = 500;
+    private static final long KEEP_ALIVE_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 15;
+    // Weather data is coarser than this, so data for a location this close is just as good.
+    private static final double NEARBY_RADIUS_KILOMETERS = 10;
+    private static final long NEARBY_CURRENT_WEATHER_MAX_AGE_MILLIS =
+            TimeUnit.MINUTES.toMillis(10);
+    private static final long NEARBY_FORECAST_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final double MAX_HEDGED_REQUEST_RATIO = 0.1;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    private static WeatherService sInstance;
+
+    private final RestAdapter mRestAdapter;
+    private final ConditionalGetClient mConditionalGetClient;
     private final OpenWeatherMapWebService mWebService;
+    private final WeatherCache mWeatherCache = new WeatherCache();
+    private final RequestCoalescer mRequestCoalescer = new RequestCoalescer();
+    private final RetryWithBackoff mRetryWithBackoff = new RetryWithBackoff(MAX_RETRIES,
+            RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS, WeatherService::isRetryable);
+    private final CircuitBreaker mCurrentWeatherCircuitBreaker = createCircuitBreaker();
+    private final CircuitBreaker mDailyForecastCircuitBreaker = createCircuitBreaker();
+    private final CircuitBreaker mHourlyForecastCircuitBreaker = createCircuitBreaker();
+    private final CircuitBreaker mGroupCircuitBreaker = createCircuitBreaker();
+    private final BatchWeatherFetcher mBatchWeatherFetcher = new BatchWeatherFetcher(
+            MAX_CITIES_PER_GROUP_REQUEST, MAX_CONCURRENT_REQUESTS,
+            this::fetchGroup, this::fetchSingleCity);
+    private final RequestHedger mCurrentWeatherHedger = new RequestHedger(
+            MAX_HEDGED_REQUEST_RATIO, DEFAULT_HEDGE_DELAY_MILLIS, Schedulers.computation());
+
+    public static synchronized WeatherService getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherService(context.getApplicationContext());
+        }
+        return sInstance;
+    }
 
-    public WeatherService() {
+    private WeatherService(final Context context) {
+        final OkHttpClient okHttpClient = CancellableCalls.createOkHttpClient();
+        okHttpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        okHttpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        okHttpClient.setWriteTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        okHttpClient.setConnectionPool(
+                new ConnectionPool(MAX_CONCURRENT_REQUESTS, KEEP_ALIVE_DURATION_MILLIS));
+        okHttpClient.setCache(new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY),
+                HTTP_CACHE_SIZE_BYTES));
 
-        RestAdapter restAdapter = new RestAdapter.Builder()
+        mConditionalGetClient = new ConditionalGetClient(new OkClient(okHttpClient));
+        mRestAdapter = new RestAdapter.Builder()
                 .setEndpoint(WEB_SERVICE_BASE_URL)
+                .setClient(mConditionalGetClient)
+                .setConverter(new OpenWeatherMapConverter())
                 .setRequestInterceptor(request -> request.addHeader("Accept", "application/json"))
-                .setLogLevel(RestAdapter.LogLevel.FULL)
+                .setLogLevel(BuildConfig.DEBUG
+                        ? RestAdapter.LogLevel.BASIC : RestAdapter.LogLevel.NONE)
                 .build();
 
-        mWebService = restAdapter.create(OpenWeatherMapWebService.class);
+        mWebService = mRestAdapter.create(OpenWeatherMapWebService.class);
     }
 
-    private interface OpenWeatherMapWebService {
+    /**
+     * Change how much of each request and response is logged. Defaults to
+     * {@link RestAdapter.LogLevel#BASIC} in debug builds and to no logging in release builds.
+     */
+    public void setLogLevel(final RestAdapter.LogLevel logLevel) {
+        mRestAdapter.setLogLevel(logLevel);
+    }
+
+    /**
+     * Calls are synchronous; they are wrapped with {@link CancellableCalls} so that unsubscribing
+     * cancels the HTTP call in flight. The request key is the key the result is cached by, see
+     * {@link ConditionalGetClient}.
+     */
+    interface OpenWeatherMapWebService {
         @GET("/weather?units=metric")
-        Observable<CurrentWeatherDataEnvelope> fetchCurrentWeather(@Query("lon") double longitude,
-                                                                   @Query("lat") double latitude);
+        CurrentWeather fetchCurrentWeather(@Query("lon") double longitude,
+                                           @Query("lat") double latitude,
+                                           @Header(ConditionalGetClient.REQUEST_KEY_HEADER)
+                                           String requestKey);
 
         @GET("/forecast/daily?units=metric&cnt=7")
-        Observable<WeatherForecastListDataEnvelope> fetchWeatherForecasts(
-                @Query("lon") double longitude, @Query("lat") double latitude);
+        List<WeatherForecast> fetchWeatherForecasts(
+                @Query("lon") double longitude, @Query("lat") double latitude,
+                @Header(ConditionalGetClient.REQUEST_KEY_HEADER) String requestKey);
+
+        @GET("/forecast?units=metric")
+        HourlyForecast fetchHourlyForecast(
+                @Query("lon") double longitude, @Query("lat") double latitude,
+                @Header(ConditionalGetClient.REQUEST_KEY_HEADER) String requestKey);
+
+        // Group results are not cached per request, so there is nothing to serve on a 304.
+        @Headers("Cache-Control: no-store")
+        @GET("/group?units=metric")
+        List<CurrentWeather> fetchCurrentWeatherGroup(
+                @Query(value = "id", encodeValue = false) String cityIds);
     }
 
+    /**
+     * Fetch the current weather for a location. Cached data for the surrounding geohash cell is
+     * returned straight away; if it has gone stale it is refreshed in the background. Without
+     * data for the cell, fresh data cached for a location within
+     * {@value #NEARBY_RADIUS_KILOMETERS} km is returned instead of making a request.
+     */
     public Observable<CurrentWeather> fetchCurrentWeather(final double longitude,
                                                           final double latitude) {
-        return mWebService.fetchCurrentWeather(longitude, latitude)
-                .flatMap(this::filterWebServiceError).map(this::getCurrentWeather);
+        return fetchCurrentWeatherSnapshot(longitude, latitude)
+                .map(WeatherSnapshot::getCurrentWeather);
     }
 
-    private Observable<CurrentWeatherDataEnvelope> filterWebServiceError(CurrentWeatherDataEnvelope currentWeatherDataEnvelope) {
-        return currentWeatherDataEnvelope.filterWebServiceErrors();
+    /**
+     * Fetch the daily forecast for a location, following the same caching rules as
+     * {@link #fetchCurrentWeather(double, double)}.
+     */
+    public Observable<List<WeatherForecast>> fetchWeatherForecasts(final double longitude,
+                                                                   final double latitude) {
+        return fetchWeatherForecastsSnapshot(longitude, latitude)
+                .map(WeatherSnapshot::getWeatherForecasts);
     }
 
-    private CurrentWeather getCurrentWeather(CurrentWeatherDataEnvelope data) {
-        return new CurrentWeather(data.locationName, data.timestamp,
-                data.weather.get(0).description, data.main.temp,
-                data.main.temp_min, data.main.temp_max);
+    /**
+     * Fetch the current weather and the daily forecast for a location as one snapshot,
+     * following the same caching rules as {@link #fetchCurrentWeather(double, double)}. The
+     * snapshot's source tells whether either part had to come from the network.
+     */
+    public Observable<WeatherSnapshot> fetchWeatherSnapshot(final double longitude,
+                                                            final double latitude) {
+        return Observable.zip(fetchCurrentWeatherSnapshot(longitude, latitude),
+                fetchWeatherForecastsSnapshot(longitude, latitude), WeatherSnapshot::merge);
     }
 
-    public Observable<List<WeatherForecast>> fetchWeatherForecasts(final double longitude,
-                                                                   final double latitude) {
-        return mWebService.fetchWeatherForecasts(longitude, latitude)
-                .flatMap(this::filterErrors)
-                .map(this::getWeatherForecast);
+    /**
+     * Like {@link #fetchWeatherSnapshot(double, double)}, but give up once {@code timeout} has
+     * passed. Requests still in flight are then cancelled unless another caller is waiting on
+     * them, and whatever is cached for the location is returned instead, including any part
+     * that arrived before the deadline. Without cached data for both parts, fails with
+     * {@link DeadlineExceededException}.
+     */
+    public Observable<WeatherSnapshot> fetchWeatherSnapshot(final double longitude,
+                                                            final double latitude,
+                                                            final long timeout,
+                                                            final TimeUnit unit) {
+        return fetchWeatherSnapshot(longitude, latitude)
+                .timeout(timeout, unit, Observable.defer(() -> {
+                    WeatherMetrics.recordTimeout(WeatherMetrics.Stage.REFRESH);
+                    final WeatherSnapshot cachedSnapshot = findCachedSnapshot(longitude, latitude);
+                    return cachedSnapshot != null
+                            ? Observable.just(cachedSnapshot)
+                            : Observable.<WeatherSnapshot>error(new DeadlineExceededException());
+                }));
+    }
+
+    /**
+     * Whatever is cached for a location or, for missing parts, close to it, regardless of age.
+     * Returns null unless both current weather and a daily forecast are available.
+     */
+    private WeatherSnapshot findCachedSnapshot(final double longitude, final double latitude) {
+        WeatherSnapshot snapshot = mWeatherCache.getSnapshot(
+                WeatherCache.getCellKey(longitude, latitude));
+        if (snapshot == null) {
+            snapshot = WeatherSnapshot.EMPTY;
+        }
+        if (snapshot.getCurrentWeather() == null) {
+            final WeatherSnapshot nearbySnapshot = mWeatherCache.findNearestCurrentWeather(
+                    longitude, latitude, NEARBY_RADIUS_KILOMETERS, Long.MAX_VALUE);
+            if (nearbySnapshot != null) {
+                snapshot = snapshot.withCurrentWeather(nearbySnapshot.getCurrentWeather(),
+                        nearbySnapshot.getCurrentWeatherFetchedAt());
+            }
+        }
+        if (snapshot.getWeatherForecasts() == null) {
+            final WeatherSnapshot nearbySnapshot = mWeatherCache.findNearestWeatherForecasts(
+                    longitude, latitude, NEARBY_RADIUS_KILOMETERS, Long.MAX_VALUE);
+            if (nearbySnapshot != null) {
+                snapshot = snapshot.withWeatherForecasts(nearbySnapshot.getWeatherForecasts(),
+                        nearbySnapshot.getWeatherForecastsFetchedAt());
+            }
+        }
+        return snapshot.getCurrentWeather() != null && snapshot.getWeatherForecasts() != null
+                ? snapshot : null;
+    }
 
+    private Observable<WeatherSnapshot> fetchCurrentWeatherSnapshot(final double longitude,
+                                                                    final double latitude) {
+        final String cellKey = WeatherCache.getCellKey(longitude, latitude);
+        return Observable.defer(() -> {
+            WeatherSnapshot cachedSnapshot = mWeatherCache.getSnapshot(cellKey);
+            if (cachedSnapshot == null || cachedSnapshot.getCurrentWeather() == null) {
+                cachedSnapshot = mWeatherCache.findNearestCurrentWeather(longitude, latitude,
+                        NEARBY_RADIUS_KILOMETERS, NEARBY_CURRENT_WEATHER_MAX_AGE_MILLIS);
+                if (cachedSnapshot != null) {
+                    return Observable.just(cachedSnapshot);
+                }
+            }
+            return serveFromCache(cachedSnapshot,
+                    mWeatherCache.isCurrentWeatherFresh(cellKey),
+                    requestCurrentWeather(cellKey, longitude, latitude)
+                            .map(currentWeather -> WeatherSnapshot.EMPTY
+                                    .withCurrentWeather(currentWeather,
+                                            System.currentTimeMillis())
+                                    .withSource(WeatherSnapshot.Source.NETWORK)));
+        });
     }
 
-    private ArrayList<WeatherForecast> getWeatherForecast(WeatherForecastListDataEnvelope listData) {
-        final ArrayList<WeatherForecast> weatherForecasts =
-                new ArrayList<>();
+    private Observable<WeatherSnapshot> fetchWeatherForecastsSnapshot(final double longitude,
+                                                                      final double latitude) {
+        final String cellKey = WeatherCache.getCellKey(longitude, latitude);
+        return Observable.defer(() -> {
+            WeatherSnapshot cachedSnapshot = mWeatherCache.getSnapshot(cellKey);
+            if (cachedSnapshot == null || cachedSnapshot.getWeatherForecasts() == null) {
+                cachedSnapshot = mWeatherCache.findNearestWeatherForecasts(longitude, latitude,
+                        NEARBY_RADIUS_KILOMETERS, NEARBY_FORECAST_MAX_AGE_MILLIS);
+                if (cachedSnapshot != null) {
+                    return Observable.just(cachedSnapshot);
+                }
+            }
+            return serveFromCache(cachedSnapshot,
+                    mWeatherCache.isWeatherForecastsFresh(cellKey),
+                    requestWeatherForecasts(cellKey, longitude, latitude)
+                            .map(weatherForecasts -> WeatherSnapshot.EMPTY
+                                    .withWeatherForecasts(weatherForecasts,
+                                            System.currentTimeMillis())
+                                    .withSource(WeatherSnapshot.Source.NETWORK)));
+        });
+    }
 
-        for (WeatherForecastListDataEnvelope.ForecastDataEnvelope data : listData.list) {
-            final WeatherForecast weatherForecast = new WeatherForecast(
-                    listData.city.name, data.timestamp, data.weather.get(0).description,
-                    data.temp.min, data.temp.max);
-            weatherForecasts.add(weatherForecast);
-        }
+    /**
+     * Bring the cached current weather and daily forecast for a location up to date, waiting for
+     * the network only for data that has gone stale. A request already in flight for the same
+     * location is joined rather than repeated.
+     * <p>
+     * Emits the location's snapshot once both parts are up to date. The observation time of its
+     * current weather changes whenever the web service has new data for the location.
+     */
+    public Observable<WeatherSnapshot> prefetch(final double longitude, final double latitude) {
+        final String cellKey = WeatherCache.getCellKey(longitude, latitude);
+        return Observable.defer(() -> {
+            final CurrentWeather cachedCurrentWeather = mWeatherCache.getCurrentWeather(cellKey);
+            final Observable<CurrentWeather> currentWeather = cachedCurrentWeather != null
+                    && mWeatherCache.isCurrentWeatherFresh(cellKey)
+                    ? Observable.just(cachedCurrentWeather)
+                    : requestCurrentWeather(cellKey, longitude, latitude);
+
+            final List<WeatherForecast> cachedWeatherForecasts =
+                    mWeatherCache.getWeatherForecasts(cellKey);
+            final Observable<List<WeatherForecast>> weatherForecasts =
+                    cachedWeatherForecasts != null && mWeatherCache.isWeatherForecastsFresh(cellKey)
+                    ? Observable.just(cachedWeatherForecasts)
+                    : requestWeatherForecasts(cellKey, longitude, latitude);
+
+            return Observable.zip(currentWeather, weatherForecasts, (current, forecasts) -> {
+                // Both parts are cached by now, unless the cell has been evicted since.
+                final WeatherSnapshot snapshot = mWeatherCache.getSnapshot(cellKey);
+                if (snapshot != null && snapshot.getCurrentWeather() != null
+                        && snapshot.getWeatherForecasts() != null) {
+                    return snapshot;
+                }
+                final long now = System.currentTimeMillis();
+                return WeatherSnapshot.EMPTY.withCurrentWeather(current, now)
+                        .withWeatherForecasts(forecasts, now);
+            });
+        });
+    }
 
-        return weatherForecasts;
+    private Observable<CurrentWeather> requestCurrentWeather(final String cellKey,
+                                                             final double longitude,
+                                                             final double latitude) {
+        final String requestKey = "weather/" + cellKey;
+        return mRequestCoalescer.coalesce(requestKey, () -> resumeIfNotModified(requestKey,
+                withResilience("weather", mCurrentWeatherCircuitBreaker,
+                        mRetryWithBackoff, WeatherMetrics.Stage.CURRENT_WEATHER_REQUEST,
+                        mCurrentWeatherHedger.hedge(CancellableCalls.fromBlockingCall(() ->
+                                mWebService.fetchCurrentWeather(longitude, latitude,
+                                        requestKey)))),
+                () -> mWeatherCache.getCurrentWeather(cellKey))
+                .doOnNext(currentWeather ->
+                        mWeatherCache.putCurrentWeather(cellKey, currentWeather)));
     }
 
-    private Observable<? extends WeatherForecastListDataEnvelope> filterErrors(WeatherForecastListDataEnvelope weatherForecastListDataEnvelope) {
-        return weatherForecastListDataEnvelope.filterWebServiceErrors();
+    private Observable<List<WeatherForecast>> requestWeatherForecasts(final String cellKey,
+                                                                      final double longitude,
+                                                                      final double latitude) {
+        final String requestKey = "forecast/daily/" + cellKey;
+        return mRequestCoalescer.coalesce(requestKey, () -> resumeIfNotModified(requestKey,
+                withResilience("forecast/daily", mDailyForecastCircuitBreaker,
+                        mRetryWithBackoff, WeatherMetrics.Stage.DAILY_FORECAST_REQUEST,
+                        CancellableCalls.fromBlockingCall(() -> mWebService
+                                .fetchWeatherForecasts(longitude, latitude, requestKey))),
+                () -> mWeatherCache.getWeatherForecasts(cellKey))
+                .doOnNext(weatherForecasts ->
+                        mWeatherCache.putWeatherForecasts(cellKey, weatherForecasts)));
     }
 
     /**
-     * Base class for results returned by the weather web service.
+     * Fetch the 5 day forecast in 3 hour steps for a location, following the same caching rules
+     * as {@link #fetchCurrentWeather(double, double)}. A daily view can be derived from the
+     * result with {@link HourlyForecast#toDailyForecasts(java.util.TimeZone)}.
      */
-    private class WeatherDataEnvelope {
-        @SerializedName("cod")
-        private int httpCode;
+    public Observable<HourlyForecast> fetchHourlyForecast(final double longitude,
+                                                          final double latitude) {
+        final String cellKey = WeatherCache.getCellKey(longitude, latitude);
+        final String requestKey = "forecast/hourly/" + cellKey;
+        return Observable.defer(() -> serveFromCache(
+                mWeatherCache.getHourlyForecast(cellKey),
+                mWeatherCache.isHourlyForecastFresh(cellKey),
+                mRequestCoalescer.coalesce(requestKey, () -> resumeIfNotModified(requestKey,
+                        withResilience("forecast", mHourlyForecastCircuitBreaker,
+                                mRetryWithBackoff, WeatherMetrics.Stage.HOURLY_FORECAST_REQUEST,
+                                CancellableCalls.fromBlockingCall(() -> mWebService
+                                        .fetchHourlyForecast(longitude, latitude, requestKey))),
+                        () -> mWeatherCache.getHourlyForecast(cellKey))
+                        .doOnNext(hourlyForecast ->
+                                mWeatherCache.putHourlyForecast(cellKey, hourlyForecast)))));
+    }
 
-        class Weather {
-            public String description;
-        }
+    /**
+     * Fetch the current weather for several locations. Locations with a known city ID are
+     * fetched in group requests of up to {@value #MAX_CITIES_PER_GROUP_REQUEST} cities, the rest
+     * one by one. At most {@value #MAX_CONCURRENT_REQUESTS} requests run at the same time.
+     * <p>
+     * Results are emitted as soon as each request resolves, in no particular order. Cities whose
+     * requests fail are logged and left out of the results.
+     */
+    public Observable<CurrentWeather> fetchCurrentWeather(final List<SavedLocation> locations) {
+        return mBatchWeatherFetcher.fetch(locations);
+    }
 
-        /**
-         * The web service always returns a HTTP header code of 200 and communicates errors
-         * through a 'cod' field in the JSON payload of the response body.
-         */
-        public Observable filterWebServiceErrors() {
-            if (httpCode == 200) {
-                return Observable.just(this);
-            } else {
-                return Observable.error(
-                        new HttpException("There was a problem fetching the weather data."));
-            }
-        }
+    private Observable<List<CurrentWeather>> fetchGroup(final String cityIds) {
+        return withResilience("group", mGroupCircuitBreaker, mRetryWithBackoff,
+                WeatherMetrics.Stage.GROUP_REQUEST,
+                CancellableCalls.fromBlockingCall(() ->
+                        mWebService.fetchCurrentWeatherGroup(cityIds)))
+                .doOnError(error -> Log.w(TAG,
+                        "Group request failed, fetching cities individually", error));
+    }
+
+    private Observable<CurrentWeather> fetchSingleCity(final SavedLocation location) {
+        return fetchCurrentWeather(location.getLongitude(), location.getLatitude())
+                .onErrorResumeNext(error -> {
+                    Log.w(TAG, "Could not fetch weather for " + location.getLongitude() + ","
+                            + location.getLatitude(), error);
+                    return Observable.empty();
+                });
     }
 
     /**
-     * Data structure for current weather results returned by the web service.
+     * Number of fetches that joined a request already in flight for the same location instead
+     * of hitting the network themselves.
      */
-    private class CurrentWeatherDataEnvelope extends WeatherDataEnvelope {
-        @SerializedName("name")
-        public String locationName;
-        @SerializedName("dt")
-        public long timestamp;
-        public ArrayList<Weather> weather;
-        public Main main;
+    public long getCoalescedRequestCount() {
+        return mRequestCoalescer.getCoalescedRequestCount();
+    }
 
-        class Main {
-            public float temp;
-            public float temp_min;
-            public float temp_max;
-        }
+    /**
+     * Send a second current weather request when the first has not answered within the observed
+     * 95th percentile latency, and use whichever answers first. Beyond a single hedge up
+     * front, at most 10% of requests are hedged. Off by default.
+     */
+    public void setHedgingEnabled(final boolean enabled) {
+        mCurrentWeatherHedger.setEnabled(enabled);
     }
 
     /**
-     * Data structure for weather forecast results returned by the web service.
+     * Number of current weather requests that were hedged with a second request.
      */
-    private class WeatherForecastListDataEnvelope extends WeatherDataEnvelope {
-        public Location city;
-        public ArrayList<ForecastDataEnvelope> list;
+    public long getHedgedRequestCount() {
+        return mCurrentWeatherHedger.getHedgeCount();
+    }
 
-        class Location {
-            public String name;
+    /**
+     * Serve a cached value straight away if there is one, refreshing it in the background when it
+     * is stale. Without a cached value, fall through to the request.
+     */
+    private <T> Observable<T> serveFromCache(final T cachedValue, final boolean isFresh,
+                                             final Observable<T> request) {
+        if (cachedValue == null) {
+            return request;
         }
+        if (!isFresh) {
+            refreshInBackground(request);
+        }
+        return Observable.just(cachedValue);
+    }
+
+    private <T> void refreshInBackground(final Observable<T> request) {
+        request.subscribe(result -> {
+        }, error -> Log.w(TAG, "Background weather refresh failed", error));
+    }
+
+    /**
+     * Guard a web service request with the endpoint's circuit breaker, retry retryable
+     * failures with exponential backoff and record how long the request took and whether it
+     * timed out. Only retryable failures count towards opening the breaker; a 404 for an
+     * unknown location says nothing about the health of the service.
+     * <p>
+     * Every attempt, retries included, asks the breaker first and reports its outcome to it, so
+     * retries stop as soon as the breaker opens, whether through this request's failures or
+     * those of others to the same endpoint.
+     * <p>
+     * Callers already serve cached data whenever they have any, so while a breaker is open
+     * cached results keep being shown and their background refreshes fail fast.
+     */
+    static <T> Observable<T> withResilience(final String endpoint,
+                                            final CircuitBreaker circuitBreaker,
+                                            final RetryWithBackoff retryWithBackoff,
+                                            final WeatherMetrics.Stage stage,
+                                            final Observable<T> request) {
+        return Observable.defer(() -> {
+            if (!circuitBreaker.allowRequest()) {
+                return Observable.<T>error(new CircuitBreakerOpenException(endpoint));
+            }
+            final long startNanos = WeatherMetrics.start();
+            return request
+                    .doOnNext(result -> WeatherMetrics.record(stage, startNanos))
+                    .doOnError(error -> {
+                        if (isSocketTimeout(error)) {
+                            WeatherMetrics.recordTimeout(stage);
+                        }
+                    })
+                    .onErrorResumeNext(WeatherService::unwrapWebServiceError)
+                    .doOnCompleted(circuitBreaker::recordSuccess)
+                    .doOnError(error -> {
+                        if (isRetryable(error)) {
+                            circuitBreaker.recordFailure();
+                        } else {
+                            circuitBreaker.recordSuccess();
+                        }
+                    });
+        }).retryWhen(retryWithBackoff);
+    }
 
-        class ForecastDataEnvelope {
-            @SerializedName("dt")
-            public long timestamp;
-            public Temperature temp;
-            public ArrayList<Weather> weather;
+    /**
+     * Carry on with the value cached under the request key when the web service answers 304 Not
+     * Modified. Should that value have been evicted in the meantime, repeat the request without
+     * validators.
+     */
+    private <T> Observable<T> resumeIfNotModified(final String requestKey,
+                                                  final Observable<T> request,
+                                                  final Func0<T> cachedValue) {
+        return request.onErrorResumeNext(error -> {
+            if (!(error instanceof RetrofitError)
+                    || !ConditionalGetClient.isNotModified((RetrofitError) error)) {
+                return Observable.error(error);
+            }
+            final T value = cachedValue.call();
+            if (value != null) {
+                return Observable.just(value);
+            }
+            mConditionalGetClient.forget(requestKey);
+            return request;
+        });
+    }
+
+    /**
+     * Rate limiting, server errors, timeouts and network failures are worth retrying. Anything
+     * else, such as an unknown location or a malformed response, will fail the same way again.
+     */
+    private static boolean isRetryable(final Throwable error) {
+        if (error instanceof WebServiceException) {
+            return isRetryableStatus(((WebServiceException) error).getCode());
+        } else if (error instanceof RetrofitError) {
+            final RetrofitError retrofitError = (RetrofitError) error;
+            switch (retrofitError.getKind()) {
+                case NETWORK:
+                    return true;
+                case HTTP:
+                    return isRetryableStatus(retrofitError.getResponse().getStatus());
+                default:
+                    return false;
+            }
         }
+        return error instanceof TimeoutException || error instanceof IOException;
+    }
 
-        class Temperature {
-            public float min;
-            public float max;
+    private static boolean isSocketTimeout(final Throwable error) {
+        return error instanceof RetrofitError
+                && error.getCause() instanceof SocketTimeoutException;
+    }
+
+    private static boolean isRetryableStatus(final int status) {
+        return status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_INTERNAL_SERVER_ERROR;
+    }
+
+    private static CircuitBreaker createCircuitBreaker() {
+        return new CircuitBreaker(CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_MILLIS);
+    }
+
+    /**
+     * Errors reported in the response payload surface from the converter wrapped in a
+     * RetrofitError. Unwrap them so that callers see the HttpException itself.
+     */
+    private static <T> Observable<T> unwrapWebServiceError(final Throwable error) {
+        if (error instanceof RetrofitError
+                && error.getCause() instanceof ConversionException
+                && error.getCause().getCause() instanceof HttpException) {
+            return Observable.error(error.getCause().getCause());
         }
+        return Observable.error(error);
     }
 }
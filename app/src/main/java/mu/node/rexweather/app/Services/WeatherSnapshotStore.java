@@ -0,0 +1,183 @@
+package mu.node.rexweather.app.Services;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
+
+/**
+ * Persists the last weather shown on screen so that it can be rendered on the next cold start
+ * before location and network results are available. The current weather and the daily
+ * forecast of a {@link WeatherSnapshot} are stored, along with when they were fetched.
+ * <p>
+ * The snapshot is stored in a small versioned binary format. Reads pull the whole file in with
+ * a single sequential read and decode it from memory.
+ */
+public class WeatherSnapshotStore {
+    private static final String TAG = WeatherSnapshotStore.class.getCanonicalName();
+    private static final String FILE_NAME = "weather_snapshot.bin";
+    private static final int MAGIC = 0x52455857;  // "REXW"
+    private static final int FORMAT_VERSION = 3;
+
+    private final File mFile;
+
+    public WeatherSnapshotStore(final File directory) {
+        mFile = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Read the last persisted snapshot, or null if there is none or it cannot be decoded. The
+     * snapshot's source is {@link WeatherSnapshot.Source#CACHE}.
+     */
+    public WeatherSnapshot read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        try {
+            final byte[] bytes = readFile();
+            return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException | RuntimeException e) {
+            // A corrupt length decodes into a negative or huge count and fails unchecked.
+            Log.w(TAG, "Discarding unreadable weather snapshot", e);
+            mFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Persist a snapshot, replacing the previous one. The file is written to a temporary
+     * location first so that a crash mid-write never leaves a truncated snapshot behind. Every
+     * write gets its own temporary file, so stores for the same directory may write at the same
+     * time. The snapshot must have both current weather and a daily forecast.
+     */
+    public void write(final WeatherSnapshot snapshot) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(FILE_NAME, ".tmp", mFile.getParentFile());
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            encode(new DataOutputStream(bytes), snapshot);
+
+            final FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                bytes.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+            }
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Could not move snapshot into place");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not persist weather snapshot", e);
+        } finally {
+            // Once moved into place there is no temporary file left to delete.
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+        final byte[] bytes = new byte[(int) mFile.length()];
+        final FileInputStream inputStream = new FileInputStream(mFile);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int read = inputStream.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of snapshot");
+                }
+                offset += read;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+
+    private static void encode(final DataOutputStream output, final WeatherSnapshot snapshot)
+            throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+
+        final CurrentWeather currentWeather = snapshot.getCurrentWeather();
+        output.writeLong(snapshot.getCurrentWeatherFetchedAt());
+        writeString(output, currentWeather.getLocationName());
+        output.writeLong(currentWeather.getTimestamp());
+        writeString(output, currentWeather.getDescription());
+        output.writeFloat(currentWeather.getTemperature());
+        output.writeFloat(currentWeather.getMinimumTemperature());
+        output.writeFloat(currentWeather.getMaximumTemperature());
+
+        // All forecasts in a response share a location so its name is only written once.
+        final List<WeatherForecast> weatherForecasts = snapshot.getWeatherForecasts();
+        output.writeLong(snapshot.getWeatherForecastsFetchedAt());
+        final int count = weatherForecasts.size();
+        output.writeInt(count);
+        writeString(output, count > 0 ? weatherForecasts.get(0).getLocationName() : null);
+        for (int i = 0; i < count; i++) {
+            final WeatherForecast weatherForecast = weatherForecasts.get(i);
+            output.writeLong(weatherForecast.getTimestamp());
+            writeString(output, weatherForecast.getDescription());
+            output.writeFloat(weatherForecast.getMinimumTemperature());
+            output.writeFloat(weatherForecast.getMaximumTemperature());
+        }
+        output.flush();
+    }
+
+    private static WeatherSnapshot decode(final DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format");
+        }
+
+        final long currentWeatherFetchedAt = input.readLong();
+        final CurrentWeather currentWeather = new CurrentWeather(readString(input),
+                input.readLong(), readString(input), input.readFloat(), input.readFloat(),
+                input.readFloat());
+
+        final long weatherForecastsFetchedAt = input.readLong();
+        final int count = input.readInt();
+        if (count < 0 || count > input.available()) {
+            throw new IOException("Invalid forecast count " + count);
+        }
+        final String locationName = readString(input);
+        final List<WeatherForecast> weatherForecasts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            weatherForecasts.add(new WeatherForecast(locationName, input.readLong(),
+                    readString(input), input.readFloat(), input.readFloat()));
+        }
+
+        return new WeatherSnapshot(currentWeather, currentWeatherFetchedAt,
+                Collections.unmodifiableList(weatherForecasts), weatherForecastsFetchedAt,
+                null, 0, WeatherSnapshot.Source.CACHE);
+    }
+
+    /**
+     * Strings are preceded by whether they are present, as the web service may leave out
+     * location names and descriptions.
+     */
+    private static void writeString(final DataOutputStream output, final String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,22 @@
+package mu.node.rexweather.app.Services;
+
+import org.apache.http.HttpException;
+
+/**
+ * An error reported by the weather web service through the 'cod' field of the response body.
+ */
+public class WebServiceException extends HttpException {
+    private final int mCode;
+
+    public WebServiceException(final int code) {
+        super("There was a problem fetching the weather data.");
+        mCode = code;
+    }
+
+    /**
+     * The HTTP status code reported in the response body.
+     */
+    public int getCode() {
+        return mCode;
+    }
+}
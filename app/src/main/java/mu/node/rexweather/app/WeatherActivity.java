@@ -3,6 +3,11 @@ package mu.node.rexweather.app;
 import android.app.Activity;
 import android.os.Bundle;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import mu.node.rexweather.app.Services.WeatherMetrics;
+
 /**
  * Weather Activity.
  * <p/>
@@ -22,7 +27,19 @@ public class WeatherActivity extends Activity {
                     .add(R.id.container, new WeatherFragment())
                     .commit();
         }
-    }
 
+        // Keep the weather warm, and persisted for the next cold start, for as long as the app
+        // is installed rather than only while this activity is around.
+        WeatherPrefetchService.start(this);
+    }
 
+    /**
+     * Include refresh latency metrics in {@code adb shell dumpsys activity}.
+     */
+    @Override
+    public void dump(final String prefix, final FileDescriptor fd, final PrintWriter writer,
+                     final String[] args) {
+        super.dump(prefix, fd, writer, args);
+        WeatherMetrics.dump(prefix, writer);
+    }
 }
@@ -1,32 +1,41 @@
 package mu.node.rexweather.app;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import mu.node.rexweather.app.Helpers.DayFormatter;
 import mu.node.rexweather.app.Helpers.TemperatureFormatter;
+import mu.node.rexweather.app.Helpers.TemperatureUnit;
 import mu.node.rexweather.app.Models.WeatherForecast;
 
 /**
  * Provides items for our list view.
+ * <p>
+ * Forecasts are keyed by timestamp. When a refresh keeps the same days in the same order, only
+ * visible rows whose content changed are rebound, and identical data causes no view work at all.
  */
 public class WeatherForecastListAdapter extends BaseAdapter {
 
     private List<WeatherForecast> weatherForecasts;
     private Context context;
+    private final DayFormatter dayFormatter;
+    private final StringBuilder temperatureBuffer = new StringBuilder();
+    private TemperatureUnit temperatureUnit = TemperatureUnit.CELSIUS;
 
     public WeatherForecastListAdapter(final List<WeatherForecast> weatherForecasts,
                                       final Context context) {
         super();
         this.weatherForecasts = weatherForecasts;
         this.context = context;
+        this.dayFormatter = new DayFormatter(context);
     }
 
     @Override
@@ -46,7 +55,12 @@ public class WeatherForecastListAdapter extends BaseAdapter {
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return weatherForecasts.get(position).getTimestamp();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
@@ -72,32 +86,74 @@ public class WeatherForecastListAdapter extends BaseAdapter {
 
         final WeatherForecast weatherForecast = (WeatherForecast) getItem(position);
 
-        final DayFormatter dayFormatter = new DayFormatter(context);
         final String day = dayFormatter.format(weatherForecast.getTimestamp());
         viewHolder.dayTextView.setText(day);
         viewHolder.descriptionTextView.setText(weatherForecast.getDescription());
-        viewHolder.maximumTemperatureTextView.setText(
-                TemperatureFormatter.format(weatherForecast.getMaximumTemperature()));
-        viewHolder.minimumTemperatureTextView.setText(
-                TemperatureFormatter.format(weatherForecast.getMinimumTemperature()));
+        viewHolder.maximumTemperatureTextView.setText(TemperatureFormatter.format(
+                temperatureUnit.fromCelsius(weatherForecast.getMaximumTemperature()),
+                temperatureBuffer));
+        viewHolder.minimumTemperatureTextView.setText(TemperatureFormatter.format(
+                temperatureUnit.fromCelsius(weatherForecast.getMinimumTemperature()),
+                temperatureBuffer));
 
         return convertView;
     }
 
-    public void clear() {
-        if (weatherForecasts != null) {
-            weatherForecasts = null;
+    /**
+     * Show temperatures in the given unit. Rows are rebound from the forecasts already held.
+     */
+    public void setTemperatureUnit(final TemperatureUnit unit) {
+        if (unit != temperatureUnit) {
+            temperatureUnit = unit;
+            notifyDataSetChanged();
         }
     }
 
-    public void addAll(List<WeatherForecast> forecasts) {
-        if (weatherForecasts == null) {
-            weatherForecasts = new ArrayList<>();
-            weatherForecasts.addAll(forecasts);
-        } else {
-            weatherForecasts.clear();
-            weatherForecasts.addAll(forecasts);
+    /**
+     * Replace the forecasts shown by the given list view. The list is kept rather than copied, so
+     * it must not be modified afterwards.
+     */
+    public void setWeatherForecasts(final List<WeatherForecast> forecasts,
+                                    final AbsListView listView) {
+        // "Today" moves on between refreshes, not between row binds.
+        final boolean dayLabelsChanged = dayFormatter.setReferenceTime(System.currentTimeMillis());
+        final List<WeatherForecast> previousForecasts = weatherForecasts;
+        weatherForecasts = forecasts;
+
+        if (dayLabelsChanged || !hasSameTimestamps(previousForecasts, forecasts)) {
+            notifyDataSetChanged();
+            return;
         }
+
+        // Rows are the same days in the same order, so rebind visible rows that changed in place.
+        // Rows scrolled out of view pick up the new data when they are next bound.
+        final int firstVisiblePosition = listView.getFirstVisiblePosition();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            final int position = firstVisiblePosition + i;
+            if (!hasSameContent(previousForecasts.get(position), forecasts.get(position))) {
+                getView(position, listView.getChildAt(i), listView);
+            }
+        }
+    }
+
+    private static boolean hasSameTimestamps(final List<WeatherForecast> previousForecasts,
+                                             final List<WeatherForecast> forecasts) {
+        if (previousForecasts == null || previousForecasts.size() != forecasts.size()) {
+            return false;
+        }
+        for (int i = 0; i < forecasts.size(); i++) {
+            if (previousForecasts.get(i).getTimestamp() != forecasts.get(i).getTimestamp()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasSameContent(final WeatherForecast previousForecast,
+                                          final WeatherForecast forecast) {
+        return TextUtils.equals(previousForecast.getDescription(), forecast.getDescription())
+                && previousForecast.getMinimumTemperature() == forecast.getMinimumTemperature()
+                && previousForecast.getMaximumTemperature() == forecast.getMaximumTemperature();
     }
 
 
@@ -2,6 +2,7 @@ package mu.node.rexweather.app;
 
 import android.app.Fragment;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Bundle;
@@ -16,8 +17,6 @@ import android.widget.TextView;
 import org.apache.http.HttpException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -25,12 +24,17 @@ import de.keyboardsurfer.android.widget.crouton.Crouton;
 import de.keyboardsurfer.android.widget.crouton.Style;
 import hugo.weaving.DebugLog;
 import mu.node.rexweather.app.Helpers.TemperatureFormatter;
+import mu.node.rexweather.app.Helpers.TemperatureUnit;
 import mu.node.rexweather.app.Models.CurrentWeather;
 import mu.node.rexweather.app.Models.WeatherForecast;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
 import mu.node.rexweather.app.Services.LocationService;
+import mu.node.rexweather.app.Services.WeatherMetrics;
 import mu.node.rexweather.app.Services.WeatherService;
+import mu.node.rexweather.app.Services.WeatherSnapshotStore;
 import retrofit.RetrofitError;
 import rx.Observable;
+import rx.Scheduler;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
@@ -43,22 +47,35 @@ import rx.subscriptions.CompositeSubscription;
  */
 public class WeatherFragment extends Fragment {
 
-    private static final String KEY_CURRENT_WEATHER = "key_current_weather";
-    private static final String KEY_WEATHER_FORECASTS = "key_weather_forecasts";
+    // A refresh has this long end to end. Finding the location may use up to
+    // LOCATION_TIMEOUT_SECONDS of it; the network requests, including parsing, get the rest.
+    private static final long REFRESH_DEADLINE_SECONDS = 30;
     private static final long LOCATION_TIMEOUT_SECONDS = 20;
+    static final String PREFERENCES_NAME = "weather_preferences";
+    private static final String PREFERENCE_TEMPERATURE_UNIT = "temperature_unit";
     private static final String TAG = WeatherFragment.class.getCanonicalName();
 
     private final CompositeSubscription mCompositeSubscription = new CompositeSubscription();
+    private WeatherService mWeatherService;
+    private LocationService mLocationService;
+    private WeatherSnapshotStore mWeatherSnapshotStore;
+    private WeatherSnapshot mPersistedSnapshot;
     private SwipeRefreshLayout mSwipeRefreshLayout;
     private TextView mLocationNameTextView;
     private TextView mCurrentTemperatureTextView;
     private ListView mForecastListView;
     private TextView mAttributionTextView;
+    private TemperatureUnit mTemperatureUnit;
+    private CurrentWeather mCurrentWeather;
 
     @Override
     public View onCreateView(final LayoutInflater inflater, final ViewGroup container,
                              final Bundle savedInstanceState) {
 
+        mWeatherService = WeatherService.getInstance(getActivity());
+        mLocationService = new LocationService((LocationManager) getActivity()
+                .getSystemService(Context.LOCATION_SERVICE));
+
         final View rootView = inflater.inflate(R.layout.fragment_weather, container, false);
         mLocationNameTextView = (TextView) rootView.findViewById(R.id.location_name);
         mCurrentTemperatureTextView = (TextView) rootView
@@ -70,6 +87,11 @@ public class WeatherFragment extends Fragment {
                 new ArrayList<WeatherForecast>(), getActivity());
         mForecastListView.setAdapter(adapter);
 
+        // Tapping the current temperature switches between Celsius and Fahrenheit.
+        mTemperatureUnit = readTemperatureUnit();
+        adapter.setTemperatureUnit(mTemperatureUnit);
+        mCurrentTemperatureTextView.setOnClickListener(view -> toggleTemperatureUnit());
+
         mAttributionTextView = (TextView) rootView.findViewById(R.id.attribution);
 //        mAttributionTextView.setVisibility(View.INVISIBLE);
 
@@ -87,6 +109,13 @@ public class WeatherFragment extends Fragment {
             }
         });
 
+        // Render whatever we showed last time before waiting on location and network.
+        mWeatherSnapshotStore = new WeatherSnapshotStore(getActivity().getFilesDir());
+        mPersistedSnapshot = mWeatherSnapshotStore.read();
+        if (mPersistedSnapshot != null) {
+            render(mPersistedSnapshot);
+        }
+
         updateWeather();
 
         return rootView;
@@ -97,42 +126,45 @@ public class WeatherFragment extends Fragment {
     @Override
     public void onDestroy() {
         mCompositeSubscription.unsubscribe();
+        if (mLocationService != null) {
+            mLocationService.cancelRefinement();
+        }
         super.onDestroy();
     }
 
 
     private void updateWeather() {
         mSwipeRefreshLayout.setRefreshing(true);
-        final LocationManager locationManager = (LocationManager) getActivity()
-                .getSystemService(Context.LOCATION_SERVICE);
-        final LocationService locationService = new LocationService(locationManager);
-        final Observable<HashMap<String, List<WeatherForecast>>> fetchDataObservable = locationService.getLocation()
+        final long refreshStartNanos = WeatherMetrics.start();
+        final long[] mainThreadHopStartNanos = new long[1];
+        final long deadlineNanos = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(REFRESH_DEADLINE_SECONDS);
+        final Observable<WeatherSnapshot> fetchDataObservable = mLocationService.getLocation()
                 .timeout(LOCATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .flatMap(this::sendRequest);
+                .doOnError(error -> {
+                    if (error instanceof TimeoutException) {
+                        WeatherMetrics.recordTimeout(WeatherMetrics.Stage.LOCATION);
+                    }
+                })
+                .doOnNext(location ->
+                        WeatherMetrics.record(WeatherMetrics.Stage.LOCATION, refreshStartNanos))
+                .flatMap(location -> sendRequest(location, deadlineNanos));
         mCompositeSubscription.add(fetchDataObservable
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(Schedulers.io())
+                .doOnNext(snapshot -> mainThreadHopStartNanos[0] = WeatherMetrics.start())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(this::updateUI, this::onError, this::onComplete));
-    }
-
-    private Observable<? extends HashMap<String, List<WeatherForecast>>> sendRequest(Location location) {
-        final WeatherService weatherService = new WeatherService();
-        final double longitude = location.getLongitude();
-        final double latitude = location.getLatitude();
-        return Observable.zip(weatherService.fetchCurrentWeather(longitude, latitude),
-                weatherService.fetchWeatherForecasts(longitude, latitude),
-                WeatherFragment.this::getWeatherData
-        );
+                .doOnNext(snapshot -> WeatherMetrics.record(
+                        WeatherMetrics.Stage.MAIN_THREAD_HOP, mainThreadHopStartNanos[0]))
+                .subscribe(snapshot -> {
+                    updateUI(snapshot);
+                    WeatherMetrics.record(WeatherMetrics.Stage.REFRESH, refreshStartNanos);
+                }, this::onError, this::onComplete));
     }
 
-
-    private HashMap<String, List<WeatherForecast>> getWeatherData(CurrentWeather currentWeather, List<WeatherForecast> weatherForecasts) {
-        HashMap<String, List<WeatherForecast>> weatherData = new HashMap<>();
-        List<WeatherForecast> currentWeatherList = new ArrayList<>();
-        currentWeatherList.add(currentWeather);
-        weatherData.put(KEY_CURRENT_WEATHER, currentWeatherList);
-        weatherData.put(KEY_WEATHER_FORECASTS, weatherForecasts);
-        return weatherData;
+    private Observable<WeatherSnapshot> sendRequest(Location location, long deadlineNanos) {
+        return mWeatherService.fetchWeatherSnapshot(location.getLongitude(),
+                location.getLatitude(), Math.max(deadlineNanos - System.nanoTime(), 0),
+                TimeUnit.NANOSECONDS);
     }
 
 
@@ -158,17 +190,70 @@ public class WeatherFragment extends Fragment {
         }
     }
 
-    private void updateUI(HashMap<String, List<WeatherForecast>> stringListHashMap) {
-        final CurrentWeather currentWeather = (CurrentWeather) stringListHashMap
-                .get(KEY_CURRENT_WEATHER).get(0);
-        mLocationNameTextView.setText(currentWeather.getLocationName());
-        mCurrentTemperatureTextView.setText(
-                TemperatureFormatter.format(currentWeather.getTemperature()));
-        final List<WeatherForecast> weatherForecasts = stringListHashMap.get(KEY_WEATHER_FORECASTS);
+    private void updateUI(WeatherSnapshot snapshot) {
+        render(snapshot);
+        // Skip the disk write when nothing has been fetched since the snapshot on disk.
+        if (mPersistedSnapshot == null
+                || snapshot.getCurrentWeatherFetchedAt()
+                > mPersistedSnapshot.getCurrentWeatherFetchedAt()
+                || snapshot.getWeatherForecastsFetchedAt()
+                > mPersistedSnapshot.getWeatherForecastsFetchedAt()) {
+            mPersistedSnapshot = snapshot;
+            persistSnapshot(snapshot);
+        }
+    }
+
+    private void render(WeatherSnapshot snapshot) {
+        mCurrentWeather = snapshot.getCurrentWeather();
+        mLocationNameTextView.setText(mCurrentWeather.getLocationName());
+        renderCurrentTemperature();
         final WeatherForecastListAdapter adapter = (WeatherForecastListAdapter)
                 mForecastListView.getAdapter();
-        adapter.clear();
-        adapter.addAll(weatherForecasts);
+        adapter.setWeatherForecasts(snapshot.getWeatherForecasts(), mForecastListView);
+    }
 
+    private void renderCurrentTemperature() {
+        if (mCurrentWeather != null) {
+            mCurrentTemperatureTextView.setText(TemperatureFormatter.format(
+                    mTemperatureUnit.fromCelsius(mCurrentWeather.getTemperature())));
+        }
+    }
+
+    /**
+     * Switch units and re-render from the data already on screen, without touching the network.
+     */
+    private void toggleTemperatureUnit() {
+        mTemperatureUnit = mTemperatureUnit.next();
+        getPreferences().edit()
+                .putString(PREFERENCE_TEMPERATURE_UNIT, mTemperatureUnit.name())
+                .apply();
+        renderCurrentTemperature();
+        ((WeatherForecastListAdapter) mForecastListView.getAdapter())
+                .setTemperatureUnit(mTemperatureUnit);
+    }
+
+    private TemperatureUnit readTemperatureUnit() {
+        final String unit = getPreferences().getString(PREFERENCE_TEMPERATURE_UNIT, null);
+        try {
+            return unit != null ? TemperatureUnit.valueOf(unit) : TemperatureUnit.CELSIUS;
+        } catch (IllegalArgumentException e) {
+            return TemperatureUnit.CELSIUS;
+        }
+    }
+
+    private SharedPreferences getPreferences() {
+        return getActivity().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private void persistSnapshot(final WeatherSnapshot snapshot) {
+        final WeatherSnapshotStore weatherSnapshotStore = mWeatherSnapshotStore;
+        final Scheduler.Worker worker = Schedulers.io().createWorker();
+        worker.schedule(() -> {
+            try {
+                weatherSnapshotStore.write(snapshot);
+            } finally {
+                worker.unsubscribe();
+            }
+        });
     }
-}
\ No newline at end of file
+}
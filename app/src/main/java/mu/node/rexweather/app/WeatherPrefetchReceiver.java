@@ -0,0 +1,18 @@
+package mu.node.rexweather.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+/**
+ * Receives the prefetch alarm and starts the {@link WeatherPrefetchService}, holding a wake lock
+ * until the service has finished the run so that the device does not go back to sleep in the
+ * middle of a fetch.
+ */
+public class WeatherPrefetchReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(final Context context, final Intent intent) {
+        startWakefulService(context, new Intent(context, WeatherPrefetchService.class));
+    }
+}
@@ -0,0 +1,153 @@
+package mu.node.rexweather.app;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+import java.util.concurrent.TimeUnit;
+
+import mu.node.rexweather.app.Models.WeatherSnapshot;
+import mu.node.rexweather.app.Services.LocationService;
+import mu.node.rexweather.app.Services.WeatherPrefetchScheduler;
+import mu.node.rexweather.app.Services.WeatherService;
+import mu.node.rexweather.app.Services.WeatherSnapshotStore;
+import rx.Observable;
+
+/**
+ * Weather Prefetch Service.
+ * <p>
+ * Keeps the weather for the last known location warm while the app is in the background or not
+ * running at all. Each run is started by an inexact alarm that does not wake the device, and
+ * schedules the next one for when the {@link WeatherPrefetchScheduler} says it is due. Once the
+ * alarm goes off, the {@link WeatherPrefetchReceiver} keeps the device awake until the run is
+ * over. Prefetched snapshots are persisted to the {@link WeatherSnapshotStore}, so that the next
+ * cold start renders them immediately.
+ * <p>
+ * The base interval can be changed through the {@code prefetch_interval_minutes} preference,
+ * which is read when the first run of a process starts.
+ * <p>
+ * The backoff state lives in memory; should the process be killed between runs, the next run
+ * starts again from the base interval.
+ */
+public class WeatherPrefetchService extends IntentService {
+    private static final String PREFERENCE_PREFETCH_INTERVAL_MINUTES = "prefetch_interval_minutes";
+    private static final int DEFAULT_PREFETCH_INTERVAL_MINUTES = 15;
+    private static final long PREFETCH_MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(2);
+    private static final int PREFETCH_MIN_BATTERY_PERCENT = 20;
+
+    private static WeatherPrefetchScheduler sWeatherPrefetchScheduler;
+
+    public WeatherPrefetchService() {
+        super(WeatherPrefetchService.class.getSimpleName());
+    }
+
+    /**
+     * Start prefetching, with the first run right away. Does nothing if a run is already
+     * scheduled.
+     */
+    public static void start(final Context context) {
+        final Intent intent = new Intent(context, WeatherPrefetchReceiver.class);
+        if (PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_NO_CREATE) == null) {
+            schedule(context, SystemClock.elapsedRealtime());
+        }
+    }
+
+    private static void schedule(final Context context, final long triggerAtMillis) {
+        final AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, triggerAtMillis,
+                PendingIntent.getBroadcast(context, 0,
+                        new Intent(context, WeatherPrefetchReceiver.class), 0));
+    }
+
+    @Override
+    protected void onHandleIntent(final Intent intent) {
+        long nextRunAtMillis = SystemClock.elapsedRealtime() + getIntervalMillis(this);
+        try {
+            final WeatherPrefetchScheduler weatherPrefetchScheduler =
+                    getWeatherPrefetchScheduler();
+            weatherPrefetchScheduler.run();
+            nextRunAtMillis = weatherPrefetchScheduler.getNextRunAtMillis();
+        } finally {
+            schedule(this, nextRunAtMillis);
+            WeatherPrefetchReceiver.completeWakefulIntent(intent);
+        }
+    }
+
+    /**
+     * Only called on the service's worker thread, which handles one run at a time.
+     */
+    private WeatherPrefetchScheduler getWeatherPrefetchScheduler() {
+        if (sWeatherPrefetchScheduler == null) {
+            final Context context = getApplicationContext();
+            final WeatherService weatherService = WeatherService.getInstance(context);
+            final LocationService locationService = new LocationService(
+                    (LocationManager) context.getSystemService(LOCATION_SERVICE));
+            final WeatherSnapshotStore weatherSnapshotStore =
+                    new WeatherSnapshotStore(context.getFilesDir());
+            final long intervalMillis = getIntervalMillis(context);
+
+            sWeatherPrefetchScheduler = new WeatherPrefetchScheduler(() -> {
+                final Location location = locationService.getLastKnownLocation();
+                if (location == null) {
+                    return Observable.<Long>empty();
+                }
+                return weatherService.prefetch(location.getLongitude(), location.getLatitude())
+                        .doOnNext(snapshot -> persistIfNewer(weatherSnapshotStore, snapshot))
+                        .map(snapshot -> snapshot.getCurrentWeather().getTimestamp());
+            }, () -> isPrefetchAllowed(context), intervalMillis,
+                    Math.max(intervalMillis, PREFETCH_MAX_INTERVAL_MILLIS),
+                    SystemClock::elapsedRealtime);
+        }
+        return sWeatherPrefetchScheduler;
+    }
+
+    /**
+     * Base interval between runs, from the preferences.
+     */
+    private static long getIntervalMillis(final Context context) {
+        final int intervalMinutes = context.getSharedPreferences(WeatherFragment.PREFERENCES_NAME,
+                Context.MODE_PRIVATE).getInt(PREFERENCE_PREFETCH_INTERVAL_MINUTES,
+                DEFAULT_PREFETCH_INTERVAL_MINUTES);
+        return TimeUnit.MINUTES.toMillis(
+                intervalMinutes > 0 ? intervalMinutes : DEFAULT_PREFETCH_INTERVAL_MINUTES);
+    }
+
+    /**
+     * Skip the disk write when nothing has been fetched since the snapshot on disk, e.g. because
+     * the weather screen has persisted the same data already.
+     */
+    private static void persistIfNewer(final WeatherSnapshotStore weatherSnapshotStore,
+                                       final WeatherSnapshot snapshot) {
+        final WeatherSnapshot persistedSnapshot = weatherSnapshotStore.read();
+        if (persistedSnapshot == null
+                || snapshot.getCurrentWeatherFetchedAt()
+                > persistedSnapshot.getCurrentWeatherFetchedAt()
+                || snapshot.getWeatherForecastsFetchedAt()
+                > persistedSnapshot.getWeatherForecastsFetchedAt()) {
+            weatherSnapshotStore.write(snapshot);
+        }
+    }
+
+    /**
+     * Prefetch while charging, or otherwise only while the battery is not running low.
+     */
+    private static boolean isPrefetchAllowed(final Context context) {
+        final Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus == null
+                || batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return true;
+        }
+        final int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level < 0 || scale <= 0 || level * 100 / scale >= PREFETCH_MIN_BATTERY_PERCENT;
+    }
+}
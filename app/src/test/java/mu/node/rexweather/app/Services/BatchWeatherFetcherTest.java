@@ -0,0 +1,175 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.SavedLocation;
+import retrofit.RestAdapter;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedString;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchWeatherFetcherTest {
+    private static final int MAX_CITIES_PER_GROUP = 3;
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+    private static final long LATENCY_MILLIS = 100;
+
+    private TestScheduler testScheduler;
+    private List<String> groupRequests;
+    private List<SavedLocation> singleRequests;
+    private int activeRequestCount;
+    private int maxActiveRequestCount;
+    private boolean isGroupRequestFailing;
+
+    @Before
+    public void setUp() {
+        testScheduler = new TestScheduler();
+        groupRequests = new ArrayList<>();
+        singleRequests = new ArrayList<>();
+        activeRequestCount = 0;
+        maxActiveRequestCount = 0;
+        isGroupRequestFailing = false;
+    }
+
+    @Test
+    public void testCityIdsAreJoinedWithCommas() {
+        final List<SavedLocation> locations = new ArrayList<>();
+        locations.add(new SavedLocation(2643743, 0, 0));
+        locations.add(new SavedLocation(5128581, 0, 0));
+        locations.add(new SavedLocation(1850147, 0, 0));
+
+        assertEquals("2643743,5128581,1850147", BatchWeatherFetcher.joinCityIds(locations));
+    }
+
+    @Test
+    public void testGroupRequestSendsCommasUnencoded() {
+        final String[] requestedUrl = new String[1];
+        final WeatherService.OpenWeatherMapWebService webService = new RestAdapter.Builder()
+                .setEndpoint("http://api.openweathermap.org/data/2.5")
+                .setExecutors(Runnable::run, Runnable::run)
+                .setClient(request -> {
+                    requestedUrl[0] = request.getUrl();
+                    return new Response(request.getUrl(), 200, "OK",
+                            Collections.<Header>emptyList(), new TypedString("{\"list\":[]}"));
+                })
+                .setConverter(new OpenWeatherMapConverter())
+                .build()
+                .create(WeatherService.OpenWeatherMapWebService.class);
+
+        webService.fetchCurrentWeatherGroup("2643743,5128581");
+
+        assertEquals("http://api.openweathermap.org/data/2.5/group?units=metric"
+                + "&id=2643743,5128581", requestedUrl[0]);
+    }
+
+    @Test
+    public void testCitiesAreGroupedUpToTheGroupSize() {
+        final List<SavedLocation> locations = new ArrayList<>();
+        for (int i = 1; i <= 7; i++) {
+            locations.add(new SavedLocation(i, 0, 0));
+        }
+        locations.add(new SavedLocation(10, 20));
+
+        final TestSubscriber<CurrentWeather> subscriber = fetch(locations);
+
+        assertEquals(3, groupRequests.size());
+        assertTrue(groupRequests.contains("1,2,3"));
+        assertTrue(groupRequests.contains("4,5,6"));
+        assertTrue(groupRequests.contains("7"));
+        assertEquals(1, singleRequests.size());
+        assertEquals(8, subscriber.getOnNextEvents().size());
+        subscriber.assertTerminalEvent();
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCapped() {
+        final List<SavedLocation> locations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            locations.add(new SavedLocation(10 + i, 20));
+        }
+
+        final TestSubscriber<CurrentWeather> subscriber = new TestSubscriber<>();
+        createFetcher().fetch(locations).subscribe(subscriber);
+
+        assertEquals(MAX_CONCURRENT_REQUESTS, activeRequestCount);
+        testScheduler.advanceTimeBy(LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(2, subscriber.getOnNextEvents().size());
+        assertEquals(MAX_CONCURRENT_REQUESTS, activeRequestCount);
+
+        testScheduler.advanceTimeBy(2 * LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(MAX_CONCURRENT_REQUESTS, maxActiveRequestCount);
+        assertEquals(5, subscriber.getOnNextEvents().size());
+        subscriber.assertTerminalEvent();
+    }
+
+    @Test
+    public void testFailedGroupFallsBackToSingleRequests() {
+        isGroupRequestFailing = true;
+        final List<SavedLocation> locations = new ArrayList<>();
+        locations.add(new SavedLocation(1, 0, 0));
+        locations.add(new SavedLocation(2, 0, 0));
+
+        final TestSubscriber<CurrentWeather> subscriber = fetch(locations);
+
+        assertEquals(1, groupRequests.size());
+        assertEquals(2, singleRequests.size());
+        assertEquals(2, subscriber.getOnNextEvents().size());
+        subscriber.assertNoErrors();
+    }
+
+    private TestSubscriber<CurrentWeather> fetch(final List<SavedLocation> locations) {
+        final TestSubscriber<CurrentWeather> subscriber = new TestSubscriber<>();
+        createFetcher().fetch(locations).subscribe(subscriber);
+        testScheduler.advanceTimeBy(10 * LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        return subscriber;
+    }
+
+    private BatchWeatherFetcher createFetcher() {
+        return new BatchWeatherFetcher(MAX_CITIES_PER_GROUP, MAX_CONCURRENT_REQUESTS,
+                cityIds -> request(() -> {
+                    groupRequests.add(cityIds);
+                    if (isGroupRequestFailing) {
+                        return Observable.error(new RuntimeException("Group request failed"));
+                    }
+                    final List<CurrentWeather> results = new ArrayList<>();
+                    for (String cityId : cityIds.split(",")) {
+                        results.add(createCurrentWeather(cityId));
+                    }
+                    return Observable.just(results);
+                }),
+                location -> request(() -> {
+                    singleRequests.add(location);
+                    return Observable.just(createCurrentWeather("single"));
+                }));
+    }
+
+    /**
+     * A request that answers after a fixed latency, tracking how many are in flight.
+     */
+    private <T> Observable<T> request(final Func0<Observable<T>> response) {
+        return Observable.defer(() -> {
+            activeRequestCount++;
+            maxActiveRequestCount = Math.max(maxActiveRequestCount, activeRequestCount);
+            return Observable.timer(LATENCY_MILLIS, TimeUnit.MILLISECONDS, testScheduler)
+                    .flatMap(tick -> response.call())
+                    .doOnTerminate(() -> activeRequestCount--);
+        });
+    }
+
+    private static CurrentWeather createCurrentWeather(final String locationName) {
+        return new CurrentWeather(locationName, 0, "clear sky", 20, 15, 25);
+    }
+}
@@ -0,0 +1,78 @@
+package mu.node.rexweather.app.Services;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CancellableCallsTest {
+    private static final Request REQUEST = new Request.Builder().url("http://localhost/").build();
+
+    private OkHttpClient okHttpClient;
+
+    @Before
+    public void setUp() {
+        okHttpClient = CancellableCalls.createOkHttpClient();
+        WeatherMetrics.reset();
+    }
+
+    @Test
+    public void testFailedCallIsNotCountedAsCancelled() {
+        final Observable<String> request = CancellableCalls.fromBlockingCall(() -> {
+            okHttpClient.newCall(REQUEST);
+            throw new RuntimeException("404 Not Found");
+        });
+
+        // Both operators unsubscribe from the failed request while handling its error.
+        request.retry(2).onErrorResumeNext(Observable.just("fallback"))
+                .toBlocking().single();
+
+        assertEquals(0, WeatherMetrics.getCancellationCount());
+    }
+
+    @Test
+    public void testSuccessfulCallIsNotCountedAsCancelled() {
+        final String result = CancellableCalls.fromBlockingCall(() -> {
+            okHttpClient.newCall(REQUEST);
+            return "result";
+        }).toBlocking().single();
+
+        assertEquals("result", result);
+        assertEquals(0, WeatherMetrics.getCancellationCount());
+    }
+
+    @Test
+    public void testCallInFlightIsCancelledOnUnsubscribe() throws Exception {
+        final CountDownLatch callStarted = new CountDownLatch(1);
+        final CountDownLatch unsubscribed = new CountDownLatch(1);
+        final Subscription subscription = CancellableCalls.fromBlockingCall(() -> {
+            okHttpClient.newCall(REQUEST);
+            callStarted.countDown();
+            // Unsubscribing also interrupts the worker thread, which a blocking socket read
+            // does not respond to either.
+            while (unsubscribed.getCount() > 0) {
+                try {
+                    unsubscribed.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return "result";
+        }).subscribe();
+
+        assertTrue(callStarted.await(1, TimeUnit.SECONDS));
+        subscription.unsubscribe();
+        unsubscribed.countDown();
+
+        assertEquals(1, WeatherMetrics.getCancellationCount());
+    }
+}
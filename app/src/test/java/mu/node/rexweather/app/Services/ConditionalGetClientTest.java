@@ -0,0 +1,113 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConditionalGetClientTest {
+    private static final String PORT_LOUIS_URL =
+            "http://localhost/weather?lon=57.4977&lat=-20.1609";
+    private static final String PORT_LOUIS_HARBOUR_URL =
+            "http://localhost/weather?lon=57.4989&lat=-20.1602";
+    private static final String CURRENT_WEATHER_KEY = "weather/mh1r2";
+    private static final byte[] BODY = new byte[]{'{', '}'};
+
+    private final List<Request> sentRequests = new ArrayList<>();
+    private int status;
+    private ConditionalGetClient conditionalGetClient;
+
+    @Before
+    public void setUp() {
+        WeatherMetrics.reset();
+        sentRequests.clear();
+        status = 200;
+        conditionalGetClient = new ConditionalGetClient(request -> {
+            sentRequests.add(request);
+            return new Response(request.getUrl(), status, "", Arrays.asList(
+                    new Header("ETag", "\"v1\""),
+                    new Header("Last-Modified", "Sun, 18 Oct 2015 11:00:00 GMT")),
+                    status == 200 ? new TypedByteArray("application/json", BODY) : null);
+        });
+    }
+
+    @Test
+    public void testValidatorsAreSharedByRequestKey() throws Exception {
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, CURRENT_WEATHER_KEY));
+        status = 304;
+        conditionalGetClient.execute(request(PORT_LOUIS_HARBOUR_URL, CURRENT_WEATHER_KEY));
+
+        assertNull(getHeader(sentRequests.get(0), "If-None-Match"));
+        assertEquals("\"v1\"", getHeader(sentRequests.get(1), "If-None-Match"));
+        assertEquals("Sun, 18 Oct 2015 11:00:00 GMT",
+                getHeader(sentRequests.get(1), "If-Modified-Since"));
+        assertEquals(1, WeatherMetrics.getNotModifiedCount());
+        assertEquals(BODY.length, WeatherMetrics.getNotModifiedBytesSaved());
+    }
+
+    @Test
+    public void testRequestKeyIsNotSent() throws Exception {
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, CURRENT_WEATHER_KEY));
+
+        assertNull(getHeader(sentRequests.get(0), ConditionalGetClient.REQUEST_KEY_HEADER));
+        assertEquals("application/json", getHeader(sentRequests.get(0), "Accept"));
+    }
+
+    @Test
+    public void testRequestsWithoutKeyAreKeyedByUrl() throws Exception {
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, null));
+        conditionalGetClient.execute(request(PORT_LOUIS_HARBOUR_URL, null));
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, null));
+
+        assertNull(getHeader(sentRequests.get(1), "If-None-Match"));
+        assertEquals("\"v1\"", getHeader(sentRequests.get(2), "If-None-Match"));
+    }
+
+    @Test
+    public void testForgottenKeyIsRequestedWithoutValidators() throws Exception {
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, CURRENT_WEATHER_KEY));
+        conditionalGetClient.forget(CURRENT_WEATHER_KEY);
+        conditionalGetClient.execute(request(PORT_LOUIS_URL, CURRENT_WEATHER_KEY));
+
+        assertNull(getHeader(sentRequests.get(1), "If-None-Match"));
+    }
+
+    @Test
+    public void testNoStoreRequestsAreNotConditional() throws Exception {
+        final Request noStoreRequest = new Request("GET", PORT_LOUIS_URL,
+                Collections.singletonList(new Header("Cache-Control", "no-store")), null);
+        conditionalGetClient.execute(noStoreRequest);
+        conditionalGetClient.execute(noStoreRequest);
+
+        assertNull(getHeader(sentRequests.get(1), "If-None-Match"));
+    }
+
+    private static Request request(final String url, final String requestKey) {
+        final List<Header> headers = new ArrayList<>();
+        headers.add(new Header("Accept", "application/json"));
+        if (requestKey != null) {
+            headers.add(new Header(ConditionalGetClient.REQUEST_KEY_HEADER, requestKey));
+        }
+        return new Request("GET", url, headers, null);
+    }
+
+    private static String getHeader(final Request request, final String name) {
+        for (Header header : request.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,90 @@
+package mu.node.rexweather.app.Services;
+
+import android.location.Criteria;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocationServiceTest {
+    private LocationManager locationManager;
+    private TestScheduler testScheduler;
+    private Location lastKnownLocation;
+    private LocationService locationService;
+
+    @Before
+    public void setUp() {
+        locationManager = mock(LocationManager.class);
+        when(locationManager.getBestProvider(any(Criteria.class), anyBoolean()))
+                .thenReturn(LocationManager.NETWORK_PROVIDER);
+        lastKnownLocation = mock(Location.class);
+        when(lastKnownLocation.getTime()).thenReturn(System.currentTimeMillis());
+        when(locationManager.getLastKnownLocation(anyString())).thenReturn(lastKnownLocation);
+        testScheduler = new TestScheduler();
+        locationService = new LocationService(locationManager, testScheduler);
+    }
+
+    @Test
+    public void testFreshLastKnownLocationIsReturnedAndRefined() {
+        assertEquals(lastKnownLocation, locationService.getLocation().toBlocking().single());
+
+        verify(locationManager).requestSingleUpdate(anyString(), any(LocationListener.class),
+                any(Looper.class));
+        verify(locationManager, never()).removeUpdates(any(LocationListener.class));
+    }
+
+    @Test
+    public void testRefinementGivesUpAfterTimeout() {
+        locationService.getLocation().toBlocking().single();
+
+        testScheduler.advanceTimeBy(29, TimeUnit.SECONDS);
+        verify(locationManager, never()).removeUpdates(any(LocationListener.class));
+        testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(locationManager).removeUpdates(any(LocationListener.class));
+    }
+
+    @Test
+    public void testRefinementIsCancelled() {
+        locationService.getLocation().toBlocking().single();
+
+        locationService.cancelRefinement();
+
+        verify(locationManager).removeUpdates(any(LocationListener.class));
+    }
+
+    @Test
+    public void testRefinementsShareOneLocationUpdate() {
+        locationService.getLocation().toBlocking().single();
+        locationService.getLocation().toBlocking().single();
+
+        verify(locationManager, times(1)).requestSingleUpdate(anyString(),
+                any(LocationListener.class), any(Looper.class));
+        verify(locationManager, never()).removeUpdates(any(LocationListener.class));
+    }
+
+    @Test
+    public void testNoRefinementStartsOnceCancelled() {
+        locationService.cancelRefinement();
+
+        locationService.getLocation().toBlocking().single();
+
+        verify(locationManager).removeUpdates(any(LocationListener.class));
+    }
+}
@@ -0,0 +1,222 @@
+package mu.node.rexweather.app.Services;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import retrofit.mime.TypedByteArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks the streaming decoder against the reflective Gson envelopes it replaced, on
+ * recorded responses. Both decode into the same domain models.
+ * <p>
+ * On a desktop JVM both run at about the same speed, as Gson's reflective adapters are compiled
+ * just in time like everything else, so timings are reported and only guarded against gross
+ * regressions. The streaming decoder's gain is that it never builds the envelopes, which shows
+ * in the bytes allocated per response.
+ */
+public class OpenWeatherMapConverterBenchmarkTest {
+    private static final Type WEATHER_FORECAST_LIST_TYPE =
+            new TypeToken<List<WeatherForecast>>() {}.getType();
+    private static final int WARM_UP_ITERATIONS = 10000;
+    private static final int ROUNDS = 5;
+    private static final int ROUND_ITERATIONS = 2000;
+    private static final int ALLOCATION_ITERATIONS = 1000;
+
+    private final OpenWeatherMapConverter converter = new OpenWeatherMapConverter();
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testCurrentWeatherDecodesWithLessGarbageThanGson() throws Exception {
+        final byte[] payload = OpenWeatherMapConverterTest.readPayload("weather.json")
+                .getBytes("UTF-8");
+
+        final CurrentWeather streamed = decodeCurrentWeather(payload);
+        final CurrentWeather reflected = decodeCurrentWeatherWithGson(payload);
+        assertEquals(reflected.getLocationName(), streamed.getLocationName());
+        assertEquals(reflected.getTimestamp(), streamed.getTimestamp());
+        assertEquals(reflected.getDescription(), streamed.getDescription());
+        assertEquals(reflected.getTemperature(), streamed.getTemperature(), 0);
+
+        benchmark("current weather",
+                () -> decodeCurrentWeather(payload),
+                () -> decodeCurrentWeatherWithGson(payload));
+    }
+
+    @Test
+    public void testWeatherForecastsDecodeWithLessGarbageThanGson() throws Exception {
+        final byte[] payload = OpenWeatherMapConverterTest.readPayload("forecast_daily.json")
+                .getBytes("UTF-8");
+
+        final List<WeatherForecast> streamed = decodeWeatherForecasts(payload);
+        final List<WeatherForecast> reflected = decodeWeatherForecastsWithGson(payload);
+        assertEquals(reflected.size(), streamed.size());
+        for (int i = 0; i < streamed.size(); i++) {
+            assertEquals(reflected.get(i).getLocationName(), streamed.get(i).getLocationName());
+            assertEquals(reflected.get(i).getTimestamp(), streamed.get(i).getTimestamp());
+            assertEquals(reflected.get(i).getDescription(), streamed.get(i).getDescription());
+            assertEquals(reflected.get(i).getMinimumTemperature(),
+                    streamed.get(i).getMinimumTemperature(), 0);
+            assertEquals(reflected.get(i).getMaximumTemperature(),
+                    streamed.get(i).getMaximumTemperature(), 0);
+        }
+
+        benchmark("daily forecast",
+                () -> decodeWeatherForecasts(payload),
+                () -> decodeWeatherForecastsWithGson(payload));
+    }
+
+    private void benchmark(final String name, final Decoder streaming,
+                           final Decoder reflective) throws Exception {
+        run(streaming, WARM_UP_ITERATIONS);
+        run(reflective, WARM_UP_ITERATIONS);
+
+        // Compare the best of alternating rounds, which are the least disturbed by just in time
+        // compilation and garbage collection.
+        long streamingNanos = Long.MAX_VALUE;
+        long reflectiveNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            streamingNanos = Math.min(streamingNanos, run(streaming, ROUND_ITERATIONS));
+            reflectiveNanos = Math.min(reflectiveNanos, run(reflective, ROUND_ITERATIONS));
+        }
+        final long streamingBytes = getAllocatedBytes(streaming);
+        final long reflectiveBytes = getAllocatedBytes(reflective);
+
+        System.out.println(String.format("Decoding %s per response: streaming %d ns, %d bytes;"
+                        + " Gson %d ns, %d bytes", name, streamingNanos / ROUND_ITERATIONS,
+                streamingBytes, reflectiveNanos / ROUND_ITERATIONS, reflectiveBytes));
+        assertTrue("Streaming decoder took " + streamingNanos + " ns, Gson " + reflectiveNanos
+                + " ns", streamingNanos < 2 * reflectiveNanos);
+        if (streamingBytes >= 0 && reflectiveBytes >= 0) {
+            assertTrue("Streaming decoder allocated " + streamingBytes + " bytes, Gson "
+                    + reflectiveBytes + " bytes", streamingBytes < reflectiveBytes);
+        }
+    }
+
+    /**
+     * Bytes allocated by one decode, on average, or -1 if the JVM cannot measure them.
+     */
+    private static long getAllocatedBytes(final Decoder decoder) throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean allocationMXBean =
+                (com.sun.management.ThreadMXBean) threadMXBean;
+        final long threadId = Thread.currentThread().getId();
+        final long startBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+        if (startBytes < 0) {
+            return -1;
+        }
+        run(decoder, ALLOCATION_ITERATIONS);
+        return (allocationMXBean.getThreadAllocatedBytes(threadId) - startBytes)
+                / ALLOCATION_ITERATIONS;
+    }
+
+    private static long run(final Decoder decoder, final int iterations) throws Exception {
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decoder.decode();
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    private interface Decoder {
+        Object decode() throws Exception;
+    }
+
+    private CurrentWeather decodeCurrentWeather(final byte[] payload) throws Exception {
+        return (CurrentWeather) converter.fromBody(
+                new TypedByteArray("application/json", payload), CurrentWeather.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WeatherForecast> decodeWeatherForecasts(final byte[] payload) throws Exception {
+        return (List<WeatherForecast>) converter.fromBody(
+                new TypedByteArray("application/json", payload), WEATHER_FORECAST_LIST_TYPE);
+    }
+
+    private CurrentWeather decodeCurrentWeatherWithGson(final byte[] payload) throws Exception {
+        final CurrentWeatherDataEnvelope data = gson.fromJson(new InputStreamReader(
+                new ByteArrayInputStream(payload), "UTF-8"), CurrentWeatherDataEnvelope.class);
+        return new CurrentWeather(data.locationName, data.timestamp,
+                data.weather.get(0).description, data.main.temp,
+                data.main.temp_min, data.main.temp_max);
+    }
+
+    private List<WeatherForecast> decodeWeatherForecastsWithGson(final byte[] payload)
+            throws Exception {
+        final WeatherForecastListDataEnvelope listData = gson.fromJson(new InputStreamReader(
+                new ByteArrayInputStream(payload), "UTF-8"),
+                WeatherForecastListDataEnvelope.class);
+        final List<WeatherForecast> weatherForecasts = new ArrayList<>();
+        for (WeatherForecastListDataEnvelope.ForecastDataEnvelope data : listData.list) {
+            weatherForecasts.add(new WeatherForecast(listData.city.name, data.timestamp,
+                    data.weather.get(0).description, data.temp.min, data.temp.max));
+        }
+        return weatherForecasts;
+    }
+
+    /**
+     * The envelopes WeatherService decoded responses into before the streaming decoder.
+     */
+    private static class WeatherDataEnvelope {
+        @SerializedName("cod")
+        private int httpCode;
+
+        static class Weather {
+            public String description;
+        }
+    }
+
+    private static class CurrentWeatherDataEnvelope extends WeatherDataEnvelope {
+        @SerializedName("name")
+        public String locationName;
+        @SerializedName("dt")
+        public long timestamp;
+        public ArrayList<Weather> weather;
+        public Main main;
+
+        static class Main {
+            public float temp;
+            public float temp_min;
+            public float temp_max;
+        }
+    }
+
+    private static class WeatherForecastListDataEnvelope extends WeatherDataEnvelope {
+        public Location city;
+        public ArrayList<ForecastDataEnvelope> list;
+
+        static class Location {
+            public String name;
+        }
+
+        static class ForecastDataEnvelope {
+            @SerializedName("dt")
+            public long timestamp;
+            public Temperature temp;
+            public ArrayList<Weather> weather;
+        }
+
+        static class Temperature {
+            public float min;
+            public float max;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package mu.node.rexweather.app.Services;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.HourlyForecast;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import retrofit.converter.ConversionException;
+import retrofit.mime.TypedByteArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OpenWeatherMapConverterTest {
+    private static final Type CURRENT_WEATHER_LIST_TYPE =
+            new TypeToken<List<CurrentWeather>>() {}.getType();
+    private static final Type WEATHER_FORECAST_LIST_TYPE =
+            new TypeToken<List<WeatherForecast>>() {}.getType();
+
+    private final OpenWeatherMapConverter converter = new OpenWeatherMapConverter();
+
+    @Test
+    public void testCurrentWeatherIsDecoded() throws Exception {
+        // The current weather endpoint reports 'cod' as a number.
+        final CurrentWeather currentWeather =
+                decode(readPayload("weather.json"), CurrentWeather.class);
+
+        assertEquals("Port Louis", currentWeather.getLocationName());
+        assertEquals(1445166000, currentWeather.getTimestamp());
+        assertEquals("few clouds", currentWeather.getDescription());
+        assertEquals(24.27f, currentWeather.getTemperature(), 0);
+        assertEquals(22.77f, currentWeather.getMinimumTemperature(), 0);
+        assertEquals(25.47f, currentWeather.getMaximumTemperature(), 0);
+    }
+
+    @Test
+    public void testCurrentWeatherGroupIsDecoded() throws Exception {
+        final List<CurrentWeather> currentWeatherList =
+                decode(readPayload("group.json"), CURRENT_WEATHER_LIST_TYPE);
+
+        assertEquals(3, currentWeatherList.size());
+        assertEquals("Port Louis", currentWeatherList.get(0).getLocationName());
+        assertEquals("Curepipe", currentWeatherList.get(1).getLocationName());
+        assertEquals("Mahébourg", currentWeatherList.get(2).getLocationName());
+        assertEquals(22.66f, currentWeatherList.get(2).getTemperature(), 0);
+    }
+
+    @Test
+    public void testWeatherForecastsAreDecoded() throws Exception {
+        // The forecast endpoints report 'cod' as a string. The payload holds more entries than
+        // the initial capacity, so the columns grow.
+        final List<WeatherForecast> weatherForecasts =
+                decode(readPayload("forecast_daily.json"), WEATHER_FORECAST_LIST_TYPE);
+
+        assertEquals(17, weatherForecasts.size());
+        assertWeatherForecast(weatherForecasts.get(0), "Port Louis", 1445158800, "clear sky",
+                19.17f, 25.2f);
+        assertWeatherForecast(weatherForecasts.get(16), "Port Louis", 1446541200,
+                "scattered clouds", 21.63f, 28.55f);
+    }
+
+    @Test
+    public void testCityAfterListIsAppliedToEveryForecast() throws Exception {
+        final List<WeatherForecast> weatherForecasts = decode("{\"cod\":\"200\",\"list\":["
+                + "{\"dt\":1000,\"temp\":{\"min\":19.5,\"max\":25.5},"
+                + "\"weather\":[{\"description\":\"clear sky\"}]},"
+                + "{\"dt\":2000,\"temp\":{\"min\":20.5,\"max\":26.5},"
+                + "\"weather\":[{\"description\":\"light rain\"}]}],"
+                + "\"city\":{\"id\":934154,\"name\":\"Port Louis\"}}", WEATHER_FORECAST_LIST_TYPE);
+
+        assertEquals(2, weatherForecasts.size());
+        assertWeatherForecast(weatherForecasts.get(0), "Port Louis", 1000, "clear sky",
+                19.5f, 25.5f);
+        assertWeatherForecast(weatherForecasts.get(1), "Port Louis", 2000, "light rain",
+                20.5f, 26.5f);
+    }
+
+    @Test
+    public void testMissingWeatherAndNameAreDecodedAsNull() throws Exception {
+        final CurrentWeather currentWeather = decode("{\"dt\":1000,\"weather\":[],"
+                + "\"main\":{\"temp\":24.5},\"cod\":200}", CurrentWeather.class);
+        assertNull(currentWeather.getLocationName());
+        assertNull(currentWeather.getDescription());
+        assertEquals(24.5f, currentWeather.getTemperature(), 0);
+
+        final List<WeatherForecast> weatherForecasts = decode("{\"cod\":\"200\","
+                + "\"city\":{\"id\":934154},\"list\":[{\"dt\":1000,"
+                + "\"temp\":{\"min\":19.5,\"max\":25.5}}]}", WEATHER_FORECAST_LIST_TYPE);
+        assertWeatherForecast(weatherForecasts.get(0), null, 1000, null, 19.5f, 25.5f);
+    }
+
+    @Test
+    public void testHourlyForecastIsDecoded() throws Exception {
+        // More entries than the initial capacity, with the city after the list.
+        final HourlyForecast hourlyForecast =
+                decode(readPayload("forecast_hourly.json"), HourlyForecast.class);
+
+        assertEquals("Port Louis", hourlyForecast.getLocationName());
+        assertEquals(48, hourlyForecast.getCount());
+        assertEquals(1445169600, hourlyForecast.getTimestamp(0));
+        assertEquals(24.87f, hourlyForecast.getTemperature(0), 0);
+        assertEquals("clear sky", hourlyForecast.getDescription(0));
+        assertEquals(1445677200, hourlyForecast.getTimestamp(47));
+        assertEquals(27.59f, hourlyForecast.getTemperature(47), 0);
+        assertEquals("moderate rain", hourlyForecast.getDescription(47));
+    }
+
+    @Test
+    public void testHourlyEntryWithoutWeatherHasNoDescription() throws Exception {
+        final HourlyForecast hourlyForecast = decode("{\"cod\":\"200\","
+                + "\"city\":{\"name\":\"Port Louis\"},\"list\":["
+                + "{\"dt\":1000,\"main\":{\"temp\":20.5}},"
+                + "{\"dt\":2000,\"main\":{\"temp\":21.5},"
+                + "\"weather\":[{\"description\":\"light rain\"}]},"
+                + "{\"dt\":3000,\"main\":{\"temp\":22.5}}]}", HourlyForecast.class);
+
+        assertEquals(3, hourlyForecast.getCount());
+        assertNull(hourlyForecast.getDescription(0));
+        assertEquals("light rain", hourlyForecast.getDescription(1));
+        assertNull(hourlyForecast.getDescription(2));
+        assertEquals(22.5f, hourlyForecast.getTemperature(2), 0);
+    }
+
+    @Test
+    public void testErrorReportedAsStringIsThrown() throws Exception {
+        assertWebServiceError(readPayload("error_city_not_found.json"),
+                WEATHER_FORECAST_LIST_TYPE, 404);
+    }
+
+    @Test
+    public void testErrorReportedAsNumberIsThrown() throws Exception {
+        assertWebServiceError(readPayload("error_invalid_api_key.json"), CurrentWeather.class,
+                401);
+    }
+
+    @Test(expected = ConversionException.class)
+    public void testMalformedPayloadIsRejected() throws Exception {
+        decode("{\"cod\":200,\"main\":{\"temp\":\"warm\"}}", CurrentWeather.class);
+    }
+
+    @Test(expected = ConversionException.class)
+    public void testUnknownTypeIsRejected() throws Exception {
+        decode(readPayload("weather.json"), String.class);
+    }
+
+    private void assertWebServiceError(final String payload, final Type type, final int code)
+            throws Exception {
+        try {
+            decode(payload, type);
+            fail("Expected a web service error");
+        } catch (ConversionException e) {
+            assertTrue(e.getCause() instanceof WebServiceException);
+            assertEquals(code, ((WebServiceException) e.getCause()).getCode());
+        }
+    }
+
+    private static void assertWeatherForecast(final WeatherForecast weatherForecast,
+                                              final String locationName, final long timestamp,
+                                              final String description,
+                                              final float minimumTemperature,
+                                              final float maximumTemperature) {
+        assertEquals(locationName, weatherForecast.getLocationName());
+        assertEquals(timestamp, weatherForecast.getTimestamp());
+        assertEquals(description, weatherForecast.getDescription());
+        assertEquals(minimumTemperature, weatherForecast.getMinimumTemperature(), 0);
+        assertEquals(maximumTemperature, weatherForecast.getMaximumTemperature(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T decode(final String json, final Type type) throws Exception {
+        return (T) converter.fromBody(
+                new TypedByteArray("application/json", json.getBytes("UTF-8")), type);
+    }
+
+    /**
+     * Read a response recorded from the web service.
+     */
+    static String readPayload(final String name) throws Exception {
+        final InputStream inputStream = OpenWeatherMapConverterTest.class.getClassLoader()
+                .getResourceAsStream("openweathermap/" + name);
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHedgerTest {
+    private static final double MAX_HEDGE_RATIO = 0.1;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 100;
+    private static final long FAST_MILLIS = 10;
+    private static final long SLOW_MILLIS = 5000;
+
+    private TestScheduler testScheduler;
+    private RequestHedger hedger;
+    // Stands in for a web service: the n-th call answers after the n-th latency.
+    private List<Long> latencies;
+    private int callCount;
+    private int responseCount;
+
+    @Before
+    public void setUp() {
+        testScheduler = new TestScheduler();
+        hedger = new RequestHedger(MAX_HEDGE_RATIO, DEFAULT_HEDGE_DELAY_MILLIS, testScheduler);
+        hedger.setEnabled(true);
+        latencies = new ArrayList<>();
+        callCount = 0;
+        responseCount = 0;
+    }
+
+    @Test
+    public void testFastResponseIsNotHedged() {
+        latencies.add(FAST_MILLIS);
+
+        final TestSubscriber<String> subscriber = subscribe();
+        advanceTimeBy(SLOW_MILLIS);
+
+        subscriber.assertReceivedOnNext(list("response 0"));
+        assertEquals(1, callCount);
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    @Test
+    public void testSlowResponseIsHedgedAndLoserCancelled() {
+        latencies.add(SLOW_MILLIS);
+        latencies.add(FAST_MILLIS);
+
+        final TestSubscriber<String> subscriber = subscribe();
+        advanceTimeBy(DEFAULT_HEDGE_DELAY_MILLIS + FAST_MILLIS);
+
+        subscriber.assertReceivedOnNext(list("response 1"));
+        subscriber.assertTerminalEvent();
+        assertEquals(2, callCount);
+        assertEquals(1, hedger.getHedgeCount());
+
+        // The slow request was unsubscribed from and never answers.
+        advanceTimeBy(SLOW_MILLIS);
+        assertEquals(1, responseCount);
+    }
+
+    @Test
+    public void testHedgeRateIsCapped() {
+        for (int i = 0; i < 20; i++) {
+            latencies.add(SLOW_MILLIS);
+            latencies.add(SLOW_MILLIS);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            subscribe();
+            advanceTimeBy(SLOW_MILLIS + DEFAULT_HEDGE_DELAY_MILLIS);
+        }
+
+        // One hedge up front, then one for every ten requests.
+        assertEquals(20, hedger.getRequestCount());
+        assertEquals(3, hedger.getHedgeCount());
+        assertEquals(23, callCount);
+    }
+
+    @Test
+    public void testHedgeDelayFollowsObservedLatency() {
+        assertEquals(DEFAULT_HEDGE_DELAY_MILLIS, hedger.getHedgeDelayMillis());
+
+        for (int i = 0; i < 20; i++) {
+            latencies.add(FAST_MILLIS);
+            subscribe();
+            advanceTimeBy(FAST_MILLIS);
+        }
+
+        assertHedgeDelayMillis(FAST_MILLIS);
+    }
+
+    @Test
+    public void testLatencyIsRecordedWhileDisabled() {
+        hedger.setEnabled(false);
+
+        for (int i = 0; i < 20; i++) {
+            latencies.add(FAST_MILLIS);
+            subscribe();
+            advanceTimeBy(FAST_MILLIS);
+        }
+
+        assertHedgeDelayMillis(FAST_MILLIS);
+    }
+
+    @Test
+    public void testCancelledRequestIsRecordedWithElapsedTime() {
+        hedger = new RequestHedger(1, DEFAULT_HEDGE_DELAY_MILLIS, testScheduler);
+        hedger.setEnabled(true);
+
+        for (int i = 0; i < 20; i++) {
+            latencies.add(SLOW_MILLIS);
+            latencies.add(FAST_MILLIS);
+            subscribe();
+            advanceTimeBy(DEFAULT_HEDGE_DELAY_MILLIS + FAST_MILLIS);
+        }
+
+        // Every first request lost to its hedge and was cancelled after running this long.
+        assertEquals(20, hedger.getHedgeCount());
+        assertHedgeDelayMillis(DEFAULT_HEDGE_DELAY_MILLIS + FAST_MILLIS);
+    }
+
+    @Test
+    public void testDisabledHedgerPassesRequestThrough() {
+        hedger.setEnabled(false);
+        for (int i = 0; i < 20; i++) {
+            latencies.add(SLOW_MILLIS);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            subscribe();
+            advanceTimeBy(SLOW_MILLIS);
+        }
+
+        assertEquals(20, callCount);
+        assertEquals(0, hedger.getRequestCount());
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    private void assertHedgeDelayMillis(final long expectedMillis) {
+        // Allow for the resolution of the latency histogram.
+        final long hedgeDelayMillis = hedger.getHedgeDelayMillis();
+        assertTrue("Hedge delay was " + hedgeDelayMillis, hedgeDelayMillis >= expectedMillis
+                && hedgeDelayMillis <= expectedMillis + expectedMillis / 20 + 1);
+    }
+
+    private TestSubscriber<String> subscribe() {
+        final TestSubscriber<String> subscriber = new TestSubscriber<>();
+        hedger.hedge(Observable.defer(() -> {
+            final int call = callCount++;
+            return Observable.timer(latencies.get(call), TimeUnit.MILLISECONDS, testScheduler)
+                    .map(tick -> "response " + call)
+                    .doOnNext(response -> responseCount++);
+        })).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private void advanceTimeBy(final long millis) {
+        testScheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<String> list(final String item) {
+        final List<String> items = new ArrayList<>();
+        items.add(item);
+        return items;
+    }
+}
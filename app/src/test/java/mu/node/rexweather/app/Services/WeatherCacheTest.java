@@ -0,0 +1,192 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WeatherCacheTest {
+    private static final int CELL_COUNT = 3000;
+    private static final double[] RADII_KILOMETERS = {5, 25, 100, 500};
+
+    private WeatherCache weatherCache;
+    private List<String> cellKeys;
+    private List<double[]> cellCenters;
+
+    @Before
+    public void setUp() {
+        weatherCache = new WeatherCache(2 * CELL_COUNT);
+        cellKeys = new ArrayList<>();
+        cellCenters = new ArrayList<>();
+    }
+
+    @Test
+    public void testFindNearestMatchesExhaustiveSearch() {
+        final Random random = new Random(42);
+        for (int i = 0; i < CELL_COUNT; i++) {
+            final double[] location = createLocation(random);
+            put(location[0], location[1]);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            final double[] location = createLocation(random);
+            for (double radiusKilometers : RADII_KILOMETERS) {
+                final String expectedCellKey =
+                        findNearestExhaustively(location[0], location[1], radiusKilometers);
+                final WeatherSnapshot snapshot = weatherCache.findNearestCurrentWeather(
+                        location[0], location[1], radiusKilometers, Long.MAX_VALUE);
+                if (expectedCellKey == null) {
+                    assertNull(snapshot);
+                } else {
+                    // Compare distances, as two cells may be equally close.
+                    assertNotNull("No cell found near " + location[0] + "," + location[1]
+                            + " within " + radiusKilometers + " km", snapshot);
+                    assertEquals(getDistanceToCell(location[0], location[1], expectedCellKey),
+                            getDistanceToCell(location[0], location[1],
+                                    snapshot.getCurrentWeather().getLocationName()), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCellAtRadiusIsFound() {
+        final String cellKey = put(57.5, -20.2);
+        final double distance = getDistanceToCell(57.6, -20.1, cellKey);
+
+        assertNotNull(weatherCache.findNearestCurrentWeather(57.6, -20.1, distance,
+                Long.MAX_VALUE));
+        assertNull(weatherCache.findNearestCurrentWeather(57.6, -20.1, distance * 0.999,
+                Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCellAcrossAntimeridianIsFound() {
+        final String cellKey = put(179.98, 10);
+
+        final WeatherSnapshot snapshot =
+                weatherCache.findNearestCurrentWeather(-179.98, 10, 10, Long.MAX_VALUE);
+        assertEquals(cellKey, snapshot.getCurrentWeather().getLocationName());
+    }
+
+    @Test
+    public void testCellAcrossPoleIsFound() {
+        final String northCellKey = put(0, 89.97);
+        final String southCellKey = put(90, -89.97);
+
+        assertEquals(northCellKey, weatherCache.findNearestCurrentWeather(-179.9, 89.97, 10,
+                Long.MAX_VALUE).getCurrentWeather().getLocationName());
+        assertEquals(southCellKey, weatherCache.findNearestCurrentWeather(-90, -89.97, 10,
+                Long.MAX_VALUE).getCurrentWeather().getLocationName());
+    }
+
+    @Test
+    public void testCellFilledLongestAgoIsEvicted() {
+        weatherCache = new WeatherCache(3);
+        final String cellKey1 = put(10, 10);
+        final String cellKey2 = put(20, 10);
+        final String cellKey3 = put(30, 10);
+        put(10, 10);
+
+        final String cellKey4 = put(40, 10);
+
+        assertNotNull(weatherCache.getSnapshot(cellKey1));
+        assertNull(weatherCache.getSnapshot(cellKey2));
+        assertNotNull(weatherCache.getSnapshot(cellKey3));
+        assertNotNull(weatherCache.getSnapshot(cellKey4));
+    }
+
+    @Test
+    public void testCacheStaysWithinBounds() {
+        weatherCache = new WeatherCache(1000);
+        final Random random = new Random(42);
+        for (int i = 0; i < CELL_COUNT; i++) {
+            put(random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90);
+        }
+
+        int cachedCount = 0;
+        for (String cellKey : cellKeys) {
+            if (weatherCache.getSnapshot(cellKey) != null) {
+                cachedCount++;
+            }
+        }
+        assertEquals(1000, cachedCount);
+        assertNotNull(weatherCache.getSnapshot(cellKeys.get(cellKeys.size() - 1)));
+    }
+
+    /**
+     * Caches current weather for the cell of a location, named after the cell's key.
+     */
+    private String put(final double longitude, final double latitude) {
+        final String cellKey = WeatherCache.getCellKey(longitude, latitude);
+        weatherCache.putCurrentWeather(cellKey,
+                new CurrentWeather(cellKey, 0, "clear sky", 25, 20, 30));
+        cellKeys.add(cellKey);
+        cellCenters.add(Geohash.decodeCenter(cellKey));
+        return cellKey;
+    }
+
+    /**
+     * Locations anywhere on Earth, with half of them close to the antimeridian or the poles.
+     */
+    private static double[] createLocation(final Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return new double[]{(random.nextBoolean() ? 180 : -180) * random.nextDouble(),
+                        random.nextDouble() * 180 - 90};
+            case 1:
+                return new double[]{random.nextDouble() * 360 - 180,
+                        (random.nextBoolean() ? 1 : -1) * (85 + random.nextDouble() * 5)};
+            case 2:
+                return new double[]{
+                        (random.nextBoolean() ? 1 : -1) * (178 + random.nextDouble() * 2),
+                        random.nextDouble() * 180 - 90};
+            default:
+                return new double[]{random.nextDouble() * 360 - 180,
+                        random.nextDouble() * 180 - 90};
+        }
+    }
+
+    private String findNearestExhaustively(final double longitude, final double latitude,
+                                           final double radiusKilometers) {
+        String nearestCellKey = null;
+        double nearestDistance = radiusKilometers;
+        for (int i = 0; i < cellKeys.size(); i++) {
+            final double[] center = cellCenters.get(i);
+            final double distance = getDistance(longitude, latitude, center[0], center[1]);
+            if (distance <= nearestDistance) {
+                nearestDistance = distance;
+                nearestCellKey = cellKeys.get(i);
+            }
+        }
+        return nearestCellKey;
+    }
+
+    private static double getDistanceToCell(final double longitude, final double latitude,
+                                            final String cellKey) {
+        final double[] center = Geohash.decodeCenter(cellKey);
+        return getDistance(longitude, latitude, center[0], center[1]);
+    }
+
+    /**
+     * Haversine distance in kilometers, as the cache measures it.
+     */
+    private static double getDistance(final double longitude1, final double latitude1,
+                                      final double longitude2, final double latitude2) {
+        final double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        final double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * 6371 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
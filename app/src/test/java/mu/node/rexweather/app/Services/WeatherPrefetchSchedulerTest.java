@@ -0,0 +1,143 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+
+public class WeatherPrefetchSchedulerTest {
+    private static final long BASE_INTERVAL_MILLIS = 1000;
+    private static final long MAX_INTERVAL_MILLIS = 4000;
+    private static final long START_MILLIS = 50000;
+    private static final long PREFETCH_DURATION_MILLIS = 100;
+
+    private TestScheduler clock;
+    private int prefetchCount;
+    private long version;
+    private boolean isPrefetchAllowed;
+    private WeatherPrefetchScheduler prefetchScheduler;
+
+    @Before
+    public void setUp() {
+        clock = new TestScheduler();
+        clock.advanceTimeTo(START_MILLIS, TimeUnit.MILLISECONDS);
+        prefetchCount = 0;
+        version = 1;
+        isPrefetchAllowed = true;
+        prefetchScheduler = new WeatherPrefetchScheduler(
+                () -> Observable.defer(() -> {
+                    prefetchCount++;
+                    clock.advanceTimeBy(PREFETCH_DURATION_MILLIS, TimeUnit.MILLISECONDS);
+                    return Observable.just(version);
+                }),
+                () -> isPrefetchAllowed,
+                BASE_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS, clock::now);
+    }
+
+    @Test
+    public void testRunPrefetchesAndWaitsForIt() {
+        assertEquals(BASE_INTERVAL_MILLIS, prefetchScheduler.getIntervalMillis());
+
+        prefetchScheduler.run();
+        assertEquals(1, prefetchCount);
+    }
+
+    @Test
+    public void testFirstRunIsDueRightAway() {
+        assertEquals(START_MILLIS, prefetchScheduler.getNextRunAtMillis());
+    }
+
+    @Test
+    public void testNextRunIsDueAnIntervalAfterTheLastOneFinished() {
+        runWhenDue();
+        assertEquals(START_MILLIS + 100 + BASE_INTERVAL_MILLIS,
+                prefetchScheduler.getNextRunAtMillis());
+
+        runWhenDue();
+        assertEquals(START_MILLIS + 1200 + 2000, prefetchScheduler.getNextRunAtMillis());
+
+        runWhenDue();
+        assertEquals(START_MILLIS + 3300 + MAX_INTERVAL_MILLIS,
+                prefetchScheduler.getNextRunAtMillis());
+
+        version = 2;
+        runWhenDue();
+        assertEquals(START_MILLIS + 7400 + BASE_INTERVAL_MILLIS,
+                prefetchScheduler.getNextRunAtMillis());
+        assertEquals(4, prefetchCount);
+    }
+
+    @Test
+    public void testSkippedRunIsDueAgainAfterBackingOff() {
+        isPrefetchAllowed = false;
+
+        runWhenDue();
+
+        assertEquals(0, prefetchCount);
+        assertEquals(START_MILLIS + 2000, prefetchScheduler.getNextRunAtMillis());
+    }
+
+    @Test
+    public void testIntervalBacksOffWhileDataIsUnchanged() {
+        assertEquals(BASE_INTERVAL_MILLIS, prefetchScheduler.run());
+        assertEquals(2000, prefetchScheduler.run());
+        assertEquals(MAX_INTERVAL_MILLIS, prefetchScheduler.run());
+        assertEquals(MAX_INTERVAL_MILLIS, prefetchScheduler.run());
+        assertEquals(4, prefetchCount);
+        assertEquals(MAX_INTERVAL_MILLIS, prefetchScheduler.getIntervalMillis());
+    }
+
+    @Test
+    public void testIntervalResetsWhenDataChanges() {
+        prefetchScheduler.run();
+        prefetchScheduler.run();
+        prefetchScheduler.run();
+        assertEquals(MAX_INTERVAL_MILLIS, prefetchScheduler.getIntervalMillis());
+
+        version = 2;
+        assertEquals(BASE_INTERVAL_MILLIS, prefetchScheduler.run());
+    }
+
+    @Test
+    public void testPrefetchIsSkippedAndBacksOffWhenNotAllowed() {
+        isPrefetchAllowed = false;
+
+        assertEquals(2000, prefetchScheduler.run());
+        assertEquals(0, prefetchCount);
+
+        isPrefetchAllowed = true;
+        assertEquals(BASE_INTERVAL_MILLIS, prefetchScheduler.run());
+        assertEquals(1, prefetchCount);
+    }
+
+    @Test
+    public void testFailedPrefetchBacksOff() {
+        prefetchScheduler = new WeatherPrefetchScheduler(
+                () -> Observable.<Long>error(new RuntimeException()),
+                () -> true, BASE_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS, clock::now);
+
+        assertEquals(2000, prefetchScheduler.run());
+    }
+
+    @Test
+    public void testEmptyPrefetchCountsAsUnchanged() {
+        prefetchScheduler = new WeatherPrefetchScheduler(
+                () -> Observable.<Long>empty(),
+                () -> true, BASE_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS, clock::now);
+
+        assertEquals(2000, prefetchScheduler.run());
+    }
+
+    /**
+     * Run once the clock reaches the time the next run is due, as an alarm set for it would.
+     */
+    private void runWhenDue() {
+        clock.advanceTimeTo(prefetchScheduler.getNextRunAtMillis(), TimeUnit.MILLISECONDS);
+        prefetchScheduler.run();
+    }
+}
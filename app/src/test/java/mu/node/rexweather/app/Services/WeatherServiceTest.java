@@ -0,0 +1,99 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WeatherServiceTest {
+    private static final int FAILURE_THRESHOLD = 2;
+    private static final int MAX_RETRIES = 3;
+
+    private CircuitBreaker circuitBreaker;
+    private RetryWithBackoff retryWithBackoff;
+    private AtomicInteger attempts;
+
+    @Before
+    public void setUp() {
+        // The clock does not move in these tests, so an open breaker stays open.
+        circuitBreaker = new CircuitBreaker(FAILURE_THRESHOLD, 1000);
+        retryWithBackoff = new RetryWithBackoff(MAX_RETRIES, 0, 0,
+                error -> error instanceof IOException);
+        attempts = new AtomicInteger();
+    }
+
+    @Test
+    public void testRetriesStopOnceBreakerOpens() {
+        final Throwable error = awaitError(withResilience(Observable.defer(() -> {
+            attempts.incrementAndGet();
+            return Observable.<String>error(new IOException("Connection reset"));
+        })));
+
+        assertTrue(error instanceof CircuitBreakerOpenException);
+        assertEquals(FAILURE_THRESHOLD, attempts.get());
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void testRetriesStopOnceBreakerIsOpenedByOtherRequests() {
+        final Throwable error = awaitError(withResilience(Observable.defer(() -> {
+            attempts.incrementAndGet();
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+                circuitBreaker.recordFailure();
+            }
+            return Observable.<String>error(new IOException("Connection reset"));
+        })));
+
+        assertTrue(error instanceof CircuitBreakerOpenException);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testRetrySucceedsWhileBreakerIsClosed() {
+        final String result = withResilience(Observable.defer(() ->
+                attempts.incrementAndGet() < FAILURE_THRESHOLD
+                        ? Observable.<String>error(new IOException("Connection reset"))
+                        : Observable.just("result"))).toBlocking().single();
+
+        assertEquals("result", result);
+        assertEquals(FAILURE_THRESHOLD, attempts.get());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void testFatalFailureDoesNotOpenBreaker() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            final Throwable error = awaitError(withResilience(Observable.defer(() -> {
+                attempts.incrementAndGet();
+                return Observable.<String>error(new WebServiceException(404));
+            })));
+            assertTrue(error instanceof WebServiceException);
+        }
+
+        assertEquals(FAILURE_THRESHOLD, attempts.get());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    private Observable<String> withResilience(final Observable<String> request) {
+        return WeatherService.withResilience("weather", circuitBreaker, retryWithBackoff,
+                WeatherMetrics.Stage.CURRENT_WEATHER_REQUEST, request);
+    }
+
+    private static Throwable awaitError(final Observable<String> request) {
+        try {
+            request.toBlocking().single();
+        } catch (RuntimeException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+        fail("Expected the request to fail");
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+package mu.node.rexweather.app.Services;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import mu.node.rexweather.app.Models.CurrentWeather;
+import mu.node.rexweather.app.Models.WeatherForecast;
+import mu.node.rexweather.app.Models.WeatherSnapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class WeatherSnapshotStoreTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private WeatherSnapshotStore weatherSnapshotStore;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder();
+        weatherSnapshotStore = new WeatherSnapshotStore(directory);
+    }
+
+    @Test
+    public void testSnapshotIsReadBack() {
+        weatherSnapshotStore.write(createSnapshot("Port Louis", "clear sky"));
+
+        final WeatherSnapshot snapshot = weatherSnapshotStore.read();
+        assertEquals(WeatherSnapshot.Source.CACHE, snapshot.getSource());
+        assertEquals(1000, snapshot.getCurrentWeatherFetchedAt());
+        assertEquals("Port Louis", snapshot.getCurrentWeather().getLocationName());
+        assertEquals("clear sky", snapshot.getCurrentWeather().getDescription());
+        assertEquals(25f, snapshot.getCurrentWeather().getTemperature(), 0);
+        assertEquals(2000, snapshot.getWeatherForecastsFetchedAt());
+        assertEquals(2, snapshot.getWeatherForecasts().size());
+        assertEquals("Port Louis", snapshot.getWeatherForecasts().get(1).getLocationName());
+        assertEquals("clear sky", snapshot.getWeatherForecasts().get(1).getDescription());
+        assertEquals(172800, snapshot.getWeatherForecasts().get(1).getTimestamp());
+    }
+
+    @Test
+    public void testMissingNamesAndDescriptionsAreReadBackAsNull() {
+        weatherSnapshotStore.write(createSnapshot(null, null));
+
+        final WeatherSnapshot snapshot = weatherSnapshotStore.read();
+        assertNull(snapshot.getCurrentWeather().getLocationName());
+        assertNull(snapshot.getCurrentWeather().getDescription());
+        assertNull(snapshot.getWeatherForecasts().get(0).getLocationName());
+        assertNull(snapshot.getWeatherForecasts().get(0).getDescription());
+    }
+
+    @Test
+    public void testEmptyForecastIsReadBack() {
+        weatherSnapshotStore.write(new WeatherSnapshot(
+                new CurrentWeather("Port Louis", 0, "clear sky", 25, 20, 30), 1000,
+                Collections.<WeatherForecast>emptyList(), 2000, null, 0,
+                WeatherSnapshot.Source.NETWORK));
+
+        assertEquals(0, weatherSnapshotStore.read().getWeatherForecasts().size());
+    }
+
+    @Test
+    public void testCorruptSnapshotIsDiscarded() throws Exception {
+        weatherSnapshotStore.write(createSnapshot("Port Louis", "clear sky"));
+        final File file = getSnapshotFile();
+
+        // Overwrite the forecast count, which follows the current weather and its fetch time.
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            final long countOffset = 4 + 4 + 8 + (1 + 2 + "Port Louis".length()) + 8
+                    + (1 + 2 + "clear sky".length()) + 4 * 3 + 8;
+            randomAccessFile.seek(countOffset);
+            randomAccessFile.writeInt(-1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertNull(weatherSnapshotStore.read());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsDiscarded() throws Exception {
+        weatherSnapshotStore.write(createSnapshot("Port Louis", "clear sky"));
+        final File file = getSnapshotFile();
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() / 2);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertNull(weatherSnapshotStore.read());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testWritesLeaveNoTemporaryFilesBehind() {
+        weatherSnapshotStore.write(createSnapshot("Port Louis", "clear sky"));
+        weatherSnapshotStore.write(createSnapshot("Curepipe", "light rain"));
+
+        assertEquals(Collections.singletonList(getSnapshotFile()),
+                Arrays.asList(directory.listFiles()));
+        assertEquals("Curepipe", weatherSnapshotStore.read().getCurrentWeather().getLocationName());
+    }
+
+    private File getSnapshotFile() {
+        return new File(directory, "weather_snapshot.bin");
+    }
+
+    private static WeatherSnapshot createSnapshot(final String locationName,
+                                                  final String description) {
+        return new WeatherSnapshot(
+                new CurrentWeather(locationName, 0, description, 25, 20, 30), 1000,
+                Arrays.asList(new WeatherForecast(locationName, 86400, description, 20, 30),
+                        new WeatherForecast(locationName, 172800, description, 21, 29)),
+                2000, null, 0, WeatherSnapshot.Source.NETWORK);
+    }
+}
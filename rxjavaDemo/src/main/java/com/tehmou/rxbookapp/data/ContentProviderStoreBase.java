@@ -3,6 +3,7 @@ package com.tehmou.rxbookapp.data;
 import com.google.gson.Gson;
 
 import com.tehmou.rxbookapp.data.provider.SerializedJsonContract;
+import com.tehmou.rxbookapp.data.serialization.CodecRegistry;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -10,13 +11,21 @@ import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
 
 import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
 
 import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 import rx.subjects.Subject;
 
@@ -25,66 +34,225 @@ import rx.subjects.Subject;
  */
 abstract public class ContentProviderStoreBase<T, U> {
     private static final String TAG = ContentProviderStoreBase.class.getSimpleName();
+    private static final int READ_THREAD_COUNT = 2;
+    private static final int DEFAULT_CACHE_SIZE = 100;
+
+    // Changes to the same item within this window are delivered once.
+    private static final long CHANGE_COALESCING_MILLIS = 50;
+
+    // Shared by all stores so that reads never queue up more threads than this.
+    private static final Scheduler READ_SCHEDULER =
+            Schedulers.from(Executors.newFixedThreadPool(READ_THREAD_COUNT));
+
+    // Shared by all stores for handling change notifications off the main thread.
+    private static HandlerThread changeHandlerThread;
 
     final protected ContentResolver contentResolver;
     final private Type type;
-    final private Map<Uri, Subject<T, T>> subjectMap = new HashMap<>();
+    final private Gson gson = CodecRegistry.getGson();
+    final private ConcurrentMap<Uri, Subject<T, T>> subjectMap = new ConcurrentHashMap<>();
+    final private StoreCache<Uri, T> cache;
+    final private ContentObserver contentObserver;
 
     public ContentProviderStoreBase(ContentResolver contentResolver,
                                     Type type) {
+        this(contentResolver, type, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize How many items to keep in memory. Items are written through the cache
+     *                  and read from it before going to the ContentProvider.
+     */
+    public ContentProviderStoreBase(ContentResolver contentResolver,
+                                    Type type,
+                                    int cacheSize) {
+        this(contentResolver, type, cacheSize, getChangeHandler());
+    }
+
+    /**
+     * @param changeHandler Where change notifications are coalesced and dispatched.
+     */
+    ContentProviderStoreBase(ContentResolver contentResolver,
+                             Type type,
+                             int cacheSize,
+                             Handler changeHandler) {
         this.contentResolver = contentResolver;
         this.type = type;
+        this.cache = new StoreCache<>(cacheSize);
+        this.contentObserver = new ContentObserver(changeHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                super.onChange(selfChange, uri);
+                Log.v(TAG, "onChange(" + uri + ")");
+                if (pendingChanges.isEmpty()) {
+                    changeHandler.postDelayed(dispatchPendingChanges, CHANGE_COALESCING_MILLIS);
+                }
+                pendingChanges.add(uri);
+            }
+        };
         this.contentResolver.registerContentObserver(
                 getContentUri(), true, contentObserver);
     }
 
-    final private ContentObserver contentObserver = new ContentObserver(new Handler()) {
+    // Uris changed since the last dispatch. Only touched on the change handler thread.
+    final private Set<Uri> pendingChanges = new LinkedHashSet<>();
+
+    /**
+     * Reads each item changed during the coalescing window once, and delivers its final value
+     * to the item's subscribers. Changed items are read from the ContentProvider rather than the
+     * cache, since the change may come from a write that did not go through this store, such as
+     * a delete, a batch or another writer.
+     */
+    final private Runnable dispatchPendingChanges = new Runnable() {
         @Override
-        public void onChange(boolean selfChange, Uri uri) {
-            super.onChange(selfChange, uri);
-            Log.v(TAG, "onChange(" + uri + ")");
-            if (subjectMap.containsKey(uri)) {
-                subjectMap.get(uri).onNext(query(uri));
+        public void run() {
+            final Set<Uri> changedUris = new LinkedHashSet<>();
+            for (Uri uri : pendingChanges) {
+                if (uri.equals(getContentUri())) {
+                    // A change to the whole table, e.g. a bulk insert: any item may have changed.
+                    cache.clear();
+                    for (Uri itemUri : subjectMap.keySet()) {
+                        if (hasSubscribers(itemUri)) {
+                            changedUris.add(itemUri);
+                        }
+                    }
+                } else {
+                    cache.remove(uri);
+                    if (hasSubscribers(uri)) {
+                        changedUris.add(uri);
+                    }
+                }
+            }
+            Log.v(TAG, "Dispatching " + changedUris.size() + " of " + pendingChanges.size()
+                    + " changes");
+            pendingChanges.clear();
+
+            for (Uri uri : changedUris) {
+                final T item = reload(uri);
+                if (item != null) {
+                    subjectMap.get(uri).onNext(item);
+                }
             }
         }
     };
 
+    /**
+     * Subjects outlive their subscribers, so only items someone still listens to are re-read.
+     */
+    private boolean hasSubscribers(Uri uri) {
+        final Subject<T, T> subject = subjectMap.get(uri);
+        return subject != null && subject.hasObservers();
+    }
+
+    private static synchronized Handler getChangeHandler() {
+        if (changeHandlerThread == null) {
+            changeHandlerThread = new HandlerThread(
+                    "StoreChanges", Process.THREAD_PRIORITY_BACKGROUND);
+            changeHandlerThread.start();
+        }
+        return new Handler(changeHandlerThread.getLooper());
+    }
+
     public void put(T item) {
         insertOrUpdate(item);
     }
 
+    /**
+     * Inserts or replaces all items in a single transaction, with a single change notification
+     * for the whole table.
+     */
+    public void putAll(List<T> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        final ContentValues[] values = new ContentValues[items.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = createContentValues(items.get(i));
+        }
+        final int count = contentResolver.bulkInsert(getContentUri(), values);
+        Log.v(TAG, "Inserted " + count + " items at " + getContentUri());
+        // Should some rows have failed we cannot tell which, so leave them all to be read back.
+        if (count == values.length) {
+            for (T item : items) {
+                cache.put(getUriForId(getIdFor(item)), item);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream of the item with the given id. Nothing is read until the stream is
+     * subscribed to: the current item is then read on a background thread and followed by its
+     * later updates. An initial read that loses the race against an update is dropped, so a
+     * stale value never arrives after a fresher one.
+     */
     public Observable<T> getStream(U id) {
         Log.v(TAG, "getStream(" + id + ")");
-        final T item = query(id);
-        final Observable<T> observable = lazyGetSubject(id);
-        if (item != null) {
-            Log.v(TAG, "Found existing item for id=" + id);
-            return observable.startWith(item);
-        }
-        return observable;
+        final Uri uri = getUriForId(id);
+        return Observable.create(subscriber -> {
+            final Object lock = new Object();
+            final boolean[] hasUpdate = { false };
+
+            // Listen for updates before reading so that no write can slip in between.
+            subscriber.add(lazyGetSubject(uri).subscribe(
+                    item -> {
+                        synchronized (lock) {
+                            hasUpdate[0] = true;
+                            subscriber.onNext(item);
+                        }
+                    },
+                    subscriber::onError,
+                    subscriber::onCompleted));
+
+            final Scheduler.Worker worker = READ_SCHEDULER.createWorker();
+            subscriber.add(worker);
+            worker.schedule(() -> {
+                final T item = query(uri);
+                synchronized (lock) {
+                    if (item != null && !hasUpdate[0] && !subscriber.isUnsubscribed()) {
+                        Log.v(TAG, "Found existing item for id=" + id);
+                        subscriber.onNext(item);
+                    }
+                }
+            });
+        });
     }
 
-    private Observable<T> lazyGetSubject(U id) {
-        Log.v(TAG, "lazyGetSubject(" + id + ")");
-        Uri uri = getUriForId(id);
-        if (!subjectMap.containsKey(uri)) {
-            Log.v(TAG, "Creating subject for id=" + id);
-            subjectMap.put(uri, PublishSubject.create());
+    private Observable<T> lazyGetSubject(Uri uri) {
+        Log.v(TAG, "lazyGetSubject(" + uri + ")");
+        Subject<T, T> subject = subjectMap.get(uri);
+        if (subject == null) {
+            Log.v(TAG, "Creating subject for " + uri);
+            final Subject<T, T> newSubject = PublishSubject.create();
+            subject = subjectMap.putIfAbsent(uri, newSubject);
+            if (subject == null) {
+                subject = newSubject;
+            }
         }
-        return subjectMap.get(uri);
+        return subject;
     }
 
     protected void insertOrUpdate(T item) {
         Uri uri = getUriForId(getIdFor(item));
-        ContentValues values = new ContentValues();
-        values.put(SerializedJsonContract.ID, getIdFor(item).toString());
-        values.put(SerializedJsonContract.JSON, new Gson().toJson(item));
+        ContentValues values = createContentValues(item);
         if (contentResolver.update(uri, values, null, null) == 0) {
             final Uri resultUri = contentResolver.insert(uri, values);
+            if (resultUri == null) {
+                Log.e(TAG, "Could not insert at " + uri);
+                return;
+            }
             Log.v(TAG, "Inserted at " + resultUri);
         } else {
             Log.v(TAG, "Updated at " + uri);
         }
+        // Only cache once the write has succeeded, so a failed one leaves nothing behind.
+        cache.put(uri, item);
+    }
+
+    private ContentValues createContentValues(T item) {
+        ContentValues values = new ContentValues();
+        values.put(SerializedJsonContract.ID, getIdFor(item).toString());
+        values.put(SerializedJsonContract.JSON, gson.toJson(item, type));
+        return values;
     }
 
     protected T query(U id) {
@@ -92,12 +260,35 @@ abstract public class ContentProviderStoreBase<T, U> {
     }
 
     protected T query(Uri uri) {
+        final T cachedValue = cache.get(uri);
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+        final T value = read(uri);
+        // A put while we were reading may have cached a fresher item; keep that one.
+        return value != null ? cache.putIfAbsent(uri, value) : null;
+    }
+
+    /**
+     * Reads the item from the ContentProvider, bypassing the cache, and caches what it finds.
+     */
+    private T reload(Uri uri) {
+        final T value = read(uri);
+        if (value != null) {
+            cache.put(uri, value);
+        } else {
+            cache.remove(uri);
+        }
+        return value;
+    }
+
+    private T read(Uri uri) {
         Cursor cursor = contentResolver.query(uri, SerializedJsonContract.PROJECTION, null, null, null);
         T value = null;
         if (cursor != null) {
             if (cursor.moveToFirst()) {
                 final String json = cursor.getString(cursor.getColumnIndex(SerializedJsonContract.JSON));
-                value = new Gson().fromJson(json, type);
+                value = gson.fromJson(json, type);
             } else {
                 Log.e(TAG, "Could not find with id: " + uri);
             }
@@ -107,7 +298,14 @@ abstract public class ContentProviderStoreBase<T, U> {
         return value;
     }
 
-    private Uri getUriForId(U id) {
+    /**
+     * The in-memory cache in front of the ContentProvider, e.g. for its hit and miss counts.
+     */
+    public StoreCache<Uri, T> getCache() {
+        return cache;
+    }
+
+    protected Uri getUriForId(U id) {
         return Uri.withAppendedPath(getContentUri(), id.toString());
     }
 
@@ -46,9 +46,9 @@ public class DataLayer {
                 })
                 .subscribeOn(Schedulers.computation())
                 .map((repositories) -> {
+                    gitHubRepositoryStore.putAll(repositories);
                     final List<Integer> repositoryIds = new ArrayList<>();
                     for (GitHubRepository repository : repositories) {
-                        gitHubRepositoryStore.put(repository);
                         repositoryIds.add(repository.getId());
                     }
                     return new GitHubRepositorySearch(search, repositoryIds);
@@ -13,9 +13,11 @@ import android.net.Uri;
  */
 public class GitHubRepositorySearchStore extends ContentProviderStoreBase<GitHubRepositorySearch, String> {
     private static final String TAG = GitHubRepositorySearchStore.class.getSimpleName();
+    private static final int CACHE_SIZE = 20;
 
     public GitHubRepositorySearchStore(ContentResolver contentResolver) {
-        super(contentResolver, new TypeToken<GitHubRepositorySearch>() {}.getType());
+        super(contentResolver, new TypeToken<GitHubRepositorySearch>() {}.getType(),
+                CACHE_SIZE);
     }
 
     @Override
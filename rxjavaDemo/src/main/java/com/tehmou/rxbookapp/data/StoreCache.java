@@ -0,0 +1,114 @@
+package com.tehmou.rxbookapp.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded in-memory cache that evicts the least recently used entry once it is full.
+ * Safe to use from several threads. Hits, misses and evictions are counted so the cache can be
+ * sized against real usage.
+ */
+public class StoreCache<K, V> {
+    final private int maxSize;
+    final private Map<K, V> map;
+    final private AtomicLong hitCount = new AtomicLong();
+    final private AtomicLong missCount = new AtomicLong();
+    final private AtomicLong evictionCount = new AtomicLong();
+
+    public StoreCache(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > StoreCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, or null if there is none.
+     */
+    public V get(K key) {
+        final V value;
+        synchronized (map) {
+            value = map.get(key);
+        }
+        if (value != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (map) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Caches the value unless the key already has one, and returns the value the key ends up
+     * with.
+     */
+    public V putIfAbsent(K key, V value) {
+        synchronized (map) {
+            final V existingValue = map.get(key);
+            if (existingValue != null) {
+                return existingValue;
+            }
+            map.put(key, value);
+            return value;
+        }
+    }
+
+    public void remove(K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StoreCache[size=" + size() + "/" + maxSize
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+}
@@ -17,9 +17,11 @@ public class UserSettingsStore extends ContentProviderStoreBase<UserSettings, In
 
     public static final int DEFAULT_USER_ID = 0;
     private static final int DEFAULT_REPOSITORY_ID = 15491874;
+    // There is only ever one user.
+    private static final int CACHE_SIZE = 1;
 
     public UserSettingsStore(ContentResolver contentResolver) {
-        super(contentResolver, new TypeToken<UserSettings>() {}.getType());
+        super(contentResolver, new TypeToken<UserSettings>() {}.getType(), CACHE_SIZE);
         if (!hasUserSettings()) {
             insertOrUpdate(new UserSettings(DEFAULT_REPOSITORY_ID));
         }
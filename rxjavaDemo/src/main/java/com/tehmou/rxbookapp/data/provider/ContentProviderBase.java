@@ -1,9 +1,12 @@
 package com.tehmou.rxbookapp.data.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -13,6 +16,10 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * Created by ttuo on 11/01/15.
  */
@@ -21,6 +28,9 @@ abstract public class ContentProviderBase extends ContentProvider {
     protected SQLiteOpenHelper databaseHelper;
     protected UriMatcher URI_MATCHER;
 
+    // Uris changed by the batch running on the current thread, if any.
+    private final ThreadLocal<Set<Uri>> batchChangedUris = new ThreadLocal<>();
+
     @Override
     public boolean onCreate() {
         createUriMatcher();
@@ -43,7 +53,7 @@ abstract public class ContentProviderBase extends ContentProvider {
                 getDatabaseContractForMatch(match));
         int count = db.delete(tableName, where, selectionArgs);
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return count;
     }
@@ -58,11 +68,11 @@ abstract public class ContentProviderBase extends ContentProvider {
         if (idColumn != null) {
             db.insertWithOnConflict(tableName,
                     null, values, SQLiteDatabase.CONFLICT_REPLACE);
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
             return uri;
         } else {
             id = db.insert(tableName, null, values);
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
             return getUriForId(id, uri);
         }
     }
@@ -114,11 +124,93 @@ abstract public class ContentProviderBase extends ContentProvider {
                 getDatabaseContractForMatch(match));
         int count = db.update(tableName, values, where, selectionArgs);
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
+        }
+        return count;
+    }
+
+    /**
+     * Inserts or replaces all rows in one transaction and sends a single change notification
+     * for the table, instead of one per row.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        final int match = URI_MATCHER.match(uri);
+        String tableName = getTableName(match);
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                if (db.insertWithOnConflict(tableName,
+                        null, value, SQLiteDatabase.CONFLICT_REPLACE) != -1) {
+                    count++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (count > 0) {
+            notifyChange(getTableUri(uri));
         }
         return count;
     }
 
+    /**
+     * Applies all operations in one transaction. The change notifications of the individual
+     * operations are held back and sent once per table after the transaction commits.
+     * <p>
+     * The operations are applied here rather than in ContentProvider.applyBatch, the same way
+     * it does, so that the batching can be unit tested against the stubbed framework.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        final Set<Uri> changedUris = new LinkedHashSet<>();
+        final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        batchChangedUris.set(changedUris);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            batchChangedUris.remove();
+        }
+        final Set<Uri> tableUris = new LinkedHashSet<>();
+        for (Uri uri : changedUris) {
+            tableUris.add(getTableUri(uri));
+        }
+        for (Uri tableUri : tableUris) {
+            notifyChange(tableUri);
+        }
+        return results;
+    }
+
+    protected void notifyChange(Uri uri) {
+        final Set<Uri> changedUris = batchChangedUris.get();
+        if (changedUris != null) {
+            changedUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Returns the Uri of the whole table that the given Uri points into.
+     */
+    protected Uri getTableUri(Uri uri) {
+        return new Uri.Builder()
+                .scheme(uri.getScheme())
+                .authority(uri.getAuthority())
+                .appendPath(uri.getPathSegments().get(0))
+                .build();
+    }
+
     protected String getWhere(final String selection,
                               final String idColumn,
                               final String idStr,
@@ -138,7 +230,7 @@ abstract public class ContentProviderBase extends ContentProvider {
     protected Uri getUriForId(long id, Uri uri) {
         if (id > 0) {
             Uri itemUri = ContentUris.withAppendedId(uri, id);
-            getContext().getContentResolver().notifyChange(itemUri, null);
+            notifyChange(itemUri);
             return itemUri;
         }
         throw new SQLException("Problem while inserting into uri: " + uri);
@@ -0,0 +1,31 @@
+package com.tehmou.rxbookapp.data.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import com.tehmou.rxbookapp.pojo.GitHubRepository;
+import com.tehmou.rxbookapp.pojo.GitHubRepositorySearch;
+import com.tehmou.rxbookapp.pojo.UserSettings;
+
+/**
+ * Shared JSON codecs for the objects kept in the stores.
+ *
+ * Every stored type has a hand-written streaming adapter registered here, so reading and
+ * writing them never goes through reflection. The Gson instance is built once and is safe to
+ * use from any thread.
+ */
+public final class CodecRegistry {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(GitHubRepository.class, new GitHubRepositoryTypeAdapter())
+            .registerTypeAdapter(GitHubRepositorySearch.class,
+                    new GitHubRepositorySearchTypeAdapter())
+            .registerTypeAdapter(UserSettings.class, new UserSettingsTypeAdapter())
+            .create();
+
+    private CodecRegistry() {
+    }
+
+    public static Gson getGson() {
+        return GSON;
+    }
+}
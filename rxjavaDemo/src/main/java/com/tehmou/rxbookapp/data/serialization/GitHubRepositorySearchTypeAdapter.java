@@ -0,0 +1,92 @@
+package com.tehmou.rxbookapp.data.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import com.tehmou.rxbookapp.pojo.GitHubRepositorySearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the same JSON as the reflective adapter did for
+ * {@link GitHubRepositorySearch}.
+ */
+class GitHubRepositorySearchTypeAdapter extends TypeAdapter<GitHubRepositorySearch> {
+    private static final String SEARCH = "search";
+    private static final String ITEMS = "items";
+
+    @Override
+    public void write(JsonWriter out, GitHubRepositorySearch search) throws IOException {
+        if (search == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (search.getSearch() != null) {
+            out.name(SEARCH).value(search.getSearch());
+        }
+        final List<Integer> items = search.getItems();
+        if (items != null) {
+            out.name(ITEMS).beginArray();
+            for (Integer item : items) {
+                if (item == null) {
+                    out.nullValue();
+                } else {
+                    out.value(item);
+                }
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public GitHubRepositorySearch read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String search = null;
+        List<Integer> items = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            final String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case SEARCH:
+                    search = in.nextString();
+                    break;
+                case ITEMS:
+                    items = readItems(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new GitHubRepositorySearch(search, items);
+    }
+
+    private static List<Integer> readItems(JsonReader in) throws IOException {
+        final List<Integer> items = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                items.add(null);
+            } else {
+                items.add(in.nextInt());
+            }
+        }
+        in.endArray();
+        return items;
+    }
+}
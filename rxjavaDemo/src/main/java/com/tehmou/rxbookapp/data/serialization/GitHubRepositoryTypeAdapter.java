@@ -0,0 +1,76 @@
+package com.tehmou.rxbookapp.data.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import com.tehmou.rxbookapp.pojo.GitHubRepository;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the same JSON as the reflective adapter did for {@link GitHubRepository},
+ * so rows stored before this adapter existed still decode.
+ */
+class GitHubRepositoryTypeAdapter extends TypeAdapter<GitHubRepository> {
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String STARGAZERS_COUNT = "stargazers_count";
+    private static final String FORKS_COUNT = "forks_count";
+
+    @Override
+    public void write(JsonWriter out, GitHubRepository repository) throws IOException {
+        if (repository == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(ID).value(repository.getId());
+        if (repository.getName() != null) {
+            out.name(NAME).value(repository.getName());
+        }
+        out.name(STARGAZERS_COUNT).value(repository.getStargazersCount());
+        out.name(FORKS_COUNT).value(repository.getForksCount());
+        out.endObject();
+    }
+
+    @Override
+    public GitHubRepository read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int id = 0;
+        String name = null;
+        int stargazersCount = 0;
+        int forksCount = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            final String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case ID:
+                    id = in.nextInt();
+                    break;
+                case NAME:
+                    name = in.nextString();
+                    break;
+                case STARGAZERS_COUNT:
+                    stargazersCount = in.nextInt();
+                    break;
+                case FORKS_COUNT:
+                    forksCount = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new GitHubRepository(id, name, stargazersCount, forksCount);
+    }
+}
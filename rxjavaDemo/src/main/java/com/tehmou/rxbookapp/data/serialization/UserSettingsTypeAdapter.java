@@ -0,0 +1,55 @@
+package com.tehmou.rxbookapp.data.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import com.tehmou.rxbookapp.pojo.UserSettings;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the same JSON as the reflective adapter did for {@link UserSettings}.
+ */
+class UserSettingsTypeAdapter extends TypeAdapter<UserSettings> {
+    private static final String SELECTED_REPOSITORY_ID = "selectedRepositoryId";
+
+    @Override
+    public void write(JsonWriter out, UserSettings userSettings) throws IOException {
+        if (userSettings == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(SELECTED_REPOSITORY_ID).value(userSettings.getSelectedRepositoryId());
+        out.endObject();
+    }
+
+    @Override
+    public UserSettings read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int selectedRepositoryId = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            final String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case SELECTED_REPOSITORY_ID:
+                    selectedRepositoryId = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new UserSettings(selectedRepositoryId);
+    }
+}
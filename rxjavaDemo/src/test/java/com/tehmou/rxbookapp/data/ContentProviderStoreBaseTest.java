@@ -0,0 +1,289 @@
+package com.tehmou.rxbookapp.data;
+
+import com.google.gson.reflect.TypeToken;
+
+import com.tehmou.rxbookapp.data.serialization.CodecRegistry;
+import com.tehmou.rxbookapp.pojo.GitHubRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.verification.VerificationMode;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentProviderStoreBaseTest {
+    private static final Uri CONTENT_URI = mock(Uri.class);
+
+    private ContentResolver contentResolver;
+    private Handler changeHandler;
+    private ContentObserver contentObserver;
+    private TestStore store;
+
+    @Before
+    public void setUp() {
+        contentResolver = mock(ContentResolver.class);
+        when(contentResolver.update(any(Uri.class), any(ContentValues.class), anyString(),
+                any(String[].class))).thenReturn(1);
+        changeHandler = mock(Handler.class);
+        store = new TestStore(contentResolver, changeHandler);
+
+        final ArgumentCaptor<ContentObserver> contentObserverCaptor =
+                ArgumentCaptor.forClass(ContentObserver.class);
+        verify(contentResolver).registerContentObserver(
+                eq(CONTENT_URI), eq(true), contentObserverCaptor.capture());
+        contentObserver = contentObserverCaptor.getValue();
+    }
+
+    @Test
+    public void testStaleInitialReadIsNotEmittedAfterPut() throws Exception {
+        final CountDownLatch readStarted = new CountDownLatch(1);
+        final CountDownLatch putDone = new CountDownLatch(1);
+        final AtomicBoolean isPutDone = new AtomicBoolean();
+        final Cursor staleCursor = createCursor(new GitHubRepository(1, "stale", 0, 0));
+        final Cursor freshCursor = createCursor(new GitHubRepository(1, "fresh", 0, 0));
+        when(contentResolver.query(any(Uri.class), any(String[].class), anyString(),
+                any(String[].class), anyString())).thenAnswer(invocation -> {
+            if (isPutDone.get()) {
+                return freshCursor;
+            }
+            readStarted.countDown();
+            putDone.await();
+            return staleCursor;
+        });
+
+        final TestSubscriber<GitHubRepository> subscriber = new TestSubscriber<>();
+        store.getStream(1).subscribe(subscriber);
+        assertTrue(readStarted.await(1, TimeUnit.SECONDS));
+
+        // The put lands, and is delivered, while the initial read is still blocked.
+        store.put(new GitHubRepository(1, "fresh", 0, 0));
+        isPutDone.set(true);
+        contentObserver.onChange(false, store.getUriForId(1));
+        runPendingChanges();
+        assertEquals(1, subscriber.getOnNextEvents().size());
+        assertEquals("fresh", subscriber.getOnNextEvents().get(0).getName());
+
+        putDone.countDown();
+        verify(staleCursor, timeout(1000)).close();
+        // Give the stale item time to arrive, should it wrongly be emitted.
+        subscriber.awaitTerminalEvent(200, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, subscriber.getOnNextEvents().size());
+        assertEquals("fresh", store.getCache().get(store.getUriForId(1)).getName());
+    }
+
+    @Test
+    public void testChangesWithinTheWindowAreQueriedOncePerItem() throws Exception {
+        final TestSubscriber<GitHubRepository> subscriber1 = subscribeToPutItem(1);
+        final TestSubscriber<GitHubRepository> subscriber2 = subscribeToPutItem(2);
+        final Uri uri1 = store.getUriForId(1);
+        final Uri uri2 = store.getUriForId(2);
+
+        contentObserver.onChange(false, uri1);
+        contentObserver.onChange(false, uri1);
+        contentObserver.onChange(false, CONTENT_URI);
+        contentObserver.onChange(false, uri1);
+        contentObserver.onChange(false, CONTENT_URI);
+        contentObserver.onChange(false, uri2);
+        verify(changeHandler, times(1)).postDelayed(any(Runnable.class), anyLong());
+        verifyNotQueried();
+
+        runPendingChanges();
+
+        verifyQueried(uri1, times(1));
+        verifyQueried(uri2, times(1));
+        assertEquals(2, subscriber1.getOnNextEvents().size());
+        assertEquals(2, subscriber2.getOnNextEvents().size());
+    }
+
+    @Test
+    public void testItemsWithoutSubscribersAreNotQueried() {
+        contentObserver.onChange(false, store.getUriForId(1));
+        contentObserver.onChange(false, CONTENT_URI);
+
+        runPendingChanges();
+
+        verifyNotQueried();
+    }
+
+    @Test
+    public void testItemsNoLongerSubscribedToAreNotQueried() throws Exception {
+        final TestSubscriber<GitHubRepository> subscriber = subscribeToPutItem(1);
+        subscriber.unsubscribe();
+
+        store.putAll(Collections.singletonList(new GitHubRepository(1, "updated", 0, 0)));
+        contentObserver.onChange(false, CONTENT_URI);
+        contentObserver.onChange(false, store.getUriForId(1));
+        runPendingChanges();
+
+        verifyNotQueried();
+    }
+
+    @Test
+    public void testChangeAfterDispatchStartsNewWindow() throws Exception {
+        final TestSubscriber<GitHubRepository> subscriber = subscribeToPutItem(1);
+        final Uri uri = store.getUriForId(1);
+
+        contentObserver.onChange(false, uri);
+        runPendingChanges();
+        contentObserver.onChange(false, uri);
+        runPendingChanges();
+
+        verify(changeHandler, times(2)).postDelayed(any(Runnable.class), anyLong());
+        verifyQueried(uri, times(2));
+        assertEquals(3, subscriber.getOnNextEvents().size());
+    }
+
+    @Test
+    public void testChangedItemIsReadFromProviderRatherThanCache() throws Exception {
+        final TestSubscriber<GitHubRepository> subscriber = subscribeToPutItem(1);
+        final Uri uri = store.getUriForId(1);
+
+        // Another writer updates the item behind the store's back.
+        whenQueried(uri, new GitHubRepository(1, "written elsewhere", 0, 0));
+        contentObserver.onChange(false, uri);
+        runPendingChanges();
+
+        assertEquals("written elsewhere", subscriber.getOnNextEvents().get(1).getName());
+        assertEquals("written elsewhere", store.getCache().get(uri).getName());
+    }
+
+    @Test
+    public void testChangesInvalidateCachedItemsWithoutSubscribers() {
+        store.put(new GitHubRepository(1, "repository1", 0, 0));
+        store.put(new GitHubRepository(2, "repository2", 0, 0));
+        final Uri uri1 = store.getUriForId(1);
+        final Uri uri2 = store.getUriForId(2);
+
+        contentObserver.onChange(false, uri1);
+        runPendingChanges();
+        assertNull(store.getCache().get(uri1));
+        assertEquals("repository2", store.getCache().get(uri2).getName());
+
+        contentObserver.onChange(false, CONTENT_URI);
+        runPendingChanges();
+        assertNull(store.getCache().get(uri2));
+    }
+
+    @Test
+    public void testFailedPutIsNotCached() {
+        when(contentResolver.update(any(Uri.class), any(ContentValues.class), anyString(),
+                any(String[].class))).thenReturn(0);
+
+        store.put(new GitHubRepository(1, "repository1", 0, 0));
+
+        assertEquals(0, store.getCache().size());
+    }
+
+    /**
+     * Puts an item and subscribes to it, waiting for the initial read to emit it. The item can
+     * then be read back from the ContentProvider too.
+     */
+    private TestSubscriber<GitHubRepository> subscribeToPutItem(int id) throws Exception {
+        final GitHubRepository repository = new GitHubRepository(id, "repository" + id, 0, 0);
+        store.put(repository);
+        whenQueried(store.getUriForId(id), repository);
+
+        final TestSubscriber<GitHubRepository> subscriber = new TestSubscriber<>();
+        store.getStream(id).subscribe(subscriber);
+        final long deadline = System.currentTimeMillis() + 1000;
+        while (subscriber.getOnNextEvents().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, subscriber.getOnNextEvents().size());
+        return subscriber;
+    }
+
+    private void whenQueried(Uri uri, GitHubRepository repository) {
+        final Cursor cursor = createCursor(repository);
+        when(contentResolver.query(eq(uri), any(String[].class), anyString(),
+                any(String[].class), anyString())).thenReturn(cursor);
+    }
+
+    private void verifyQueried(Uri uri, VerificationMode mode) {
+        verify(contentResolver, mode).query(eq(uri), any(String[].class), anyString(),
+                any(String[].class), anyString());
+    }
+
+    private void verifyNotQueried() {
+        verify(contentResolver, never()).query(any(Uri.class), any(String[].class), anyString(),
+                any(String[].class), anyString());
+    }
+
+    /**
+     * Runs the last dispatch posted to the change handler, as its looper would once the
+     * coalescing window has passed.
+     */
+    private void runPendingChanges() {
+        final ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(changeHandler, atLeastOnce()).postDelayed(runnableCaptor.capture(), anyLong());
+        runnableCaptor.getValue().run();
+    }
+
+    private static Cursor createCursor(GitHubRepository repository) {
+        final Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToFirst()).thenReturn(true);
+        when(cursor.getString(anyInt())).thenReturn(CodecRegistry.getGson().toJson(repository));
+        return cursor;
+    }
+
+    private static class TestStore extends ContentProviderStoreBase<GitHubRepository, Integer> {
+        final private Map<Integer, Uri> uris = new HashMap<>();
+
+        public TestStore(ContentResolver contentResolver, Handler changeHandler) {
+            super(contentResolver, new TypeToken<GitHubRepository>() {}.getType(), 10,
+                    changeHandler);
+        }
+
+        @Override
+        protected synchronized Uri getUriForId(Integer id) {
+            Uri uri = uris.get(id);
+            if (uri == null) {
+                uri = mock(Uri.class);
+                uris.put(id, uri);
+            }
+            return uri;
+        }
+
+        @Override
+        protected Integer getIdFor(GitHubRepository item) {
+            return item.getId();
+        }
+
+        @Override
+        protected Uri getContentUri() {
+            return CONTENT_URI;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.tehmou.rxbookapp.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StoreCacheTest {
+    private StoreCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        cache = new StoreCache<>(2);
+    }
+
+    @Test
+    public void testGetCountsHitsAndMisses() {
+        cache.put("a", "A");
+
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testPutReplacesValue() {
+        cache.put("a", "A");
+        cache.put("a", "A2");
+
+        assertEquals("A2", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingValue() {
+        cache.put("a", "A");
+
+        assertEquals("A", cache.putIfAbsent("a", "A2"));
+        assertEquals("B", cache.putIfAbsent("b", "B"));
+
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("b"));
+    }
+
+    @Test
+    public void testClearRemovesAllValues() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // Reading "a" makes "b" the least recently used entry.
+        cache.get("a");
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    @Test
+    public void testRemove() {
+        cache.put("a", "A");
+        cache.remove("a");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxSizeMustBePositive() {
+        new StoreCache<String, String>(0);
+    }
+}
@@ -0,0 +1,177 @@
+package com.tehmou.rxbookapp.data.provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.ContentObserver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentProviderBaseTest {
+    private static final Uri TABLE_URI_A = mock(Uri.class);
+    private static final Uri TABLE_URI_B = mock(Uri.class);
+
+    private ContentResolver contentResolver;
+    private SQLiteDatabase db;
+    private TestProvider provider;
+
+    @Before
+    public void setUp() {
+        contentResolver = mock(ContentResolver.class);
+        final Context context = mock(Context.class);
+        when(context.getContentResolver()).thenReturn(contentResolver);
+
+        db = mock(SQLiteDatabase.class);
+        when(db.update(anyString(), any(ContentValues.class), anyString(), any(String[].class)))
+                .thenReturn(1);
+        final SQLiteOpenHelper databaseHelper = mock(SQLiteOpenHelper.class);
+        when(databaseHelper.getWritableDatabase()).thenReturn(db);
+
+        provider = spy(new TestProvider());
+        doReturn(context).when(provider).getContext();
+        provider.databaseHelper = databaseHelper;
+        provider.db = db;
+        provider.createUriMatcher();
+    }
+
+    @Test
+    public void testBulkInsertNotifiesTableOnce() {
+        final ContentValues[] values = new ContentValues[5];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new ContentValues();
+        }
+
+        provider.bulkInsert(TABLE_URI_A, values);
+
+        verify(db, times(5)).insertWithOnConflict(anyString(), anyString(),
+                any(ContentValues.class), eq(SQLiteDatabase.CONFLICT_REPLACE));
+        verify(db, times(1)).beginTransaction();
+        verify(db, times(1)).setTransactionSuccessful();
+        verify(contentResolver, times(1)).notifyChange(TABLE_URI_A, null);
+        verify(contentResolver, times(1))
+                .notifyChange(any(Uri.class), any(ContentObserver.class));
+    }
+
+    @Test
+    public void testApplyBatchNotifiesEachTableOnce() throws Exception {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(createUpdate(provider.addItemUri(TABLE_URI_A)));
+        operations.add(createUpdate(provider.addItemUri(TABLE_URI_A)));
+        operations.add(createUpdate(provider.addItemUri(TABLE_URI_B)));
+        operations.add(createUpdate(provider.addItemUri(TABLE_URI_A)));
+
+        provider.applyBatch(operations);
+
+        verify(db, times(4)).update(anyString(), any(ContentValues.class), anyString(),
+                any(String[].class));
+        verify(db, times(1)).beginTransaction();
+        verify(db, times(1)).setTransactionSuccessful();
+        verify(contentResolver, times(1)).notifyChange(TABLE_URI_A, null);
+        verify(contentResolver, times(1)).notifyChange(TABLE_URI_B, null);
+        verify(contentResolver, times(2))
+                .notifyChange(any(Uri.class), any(ContentObserver.class));
+    }
+
+    @Test
+    public void testChangesAfterBatchAreNotifiedRightAway() throws Exception {
+        final Uri itemUri = provider.addItemUri(TABLE_URI_A);
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(createUpdate(itemUri));
+        provider.applyBatch(operations);
+
+        provider.update(itemUri, new ContentValues(), null, null);
+
+        verify(contentResolver, times(1)).notifyChange(TABLE_URI_A, null);
+        verify(contentResolver, times(1)).notifyChange(itemUri, null);
+    }
+
+    /**
+     * An operation that updates the item at the given Uri when applied.
+     */
+    private ContentProviderOperation createUpdate(final Uri itemUri) throws Exception {
+        final ContentProviderOperation operation = mock(ContentProviderOperation.class);
+        when(operation.apply(eq(provider), any(ContentProviderResult[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    final int count = provider.update(itemUri, new ContentValues(), null, null);
+                    return new ContentProviderResult(count);
+                });
+        return operation;
+    }
+
+    private static class TestProvider extends ContentProviderBase {
+        final private Map<Uri, Uri> tableUris = new HashMap<>();
+        final private DatabaseContract databaseContract = mock(DatabaseContract.class);
+
+        /**
+         * Creates a Uri for a new item in the given table.
+         */
+        Uri addItemUri(Uri tableUri) {
+            final Uri itemUri = mock(Uri.class);
+            tableUris.put(itemUri, tableUri);
+            return itemUri;
+        }
+
+        @Override
+        protected Uri getTableUri(Uri uri) {
+            final Uri tableUri = tableUris.get(uri);
+            return tableUri != null ? tableUri : uri;
+        }
+
+        @Override
+        protected DatabaseContract getDatabaseContractForMatch(int match) {
+            return databaseContract;
+        }
+
+        @Override
+        protected String getTableName(int match) {
+            return "table";
+        }
+
+        @Override
+        protected String getIdColumnName(int match) {
+            return "id";
+        }
+
+        @Override
+        protected String getDefaultSortOrder(int match) {
+            return null;
+        }
+
+        @Override
+        protected SQLiteOpenHelper createDatabaseHelper(Context context) {
+            return null;
+        }
+
+        @Override
+        protected void createUriMatcher() {
+            URI_MATCHER = mock(UriMatcher.class);
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+    }
+}
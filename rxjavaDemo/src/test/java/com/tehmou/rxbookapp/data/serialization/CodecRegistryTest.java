@@ -0,0 +1,67 @@
+package com.tehmou.rxbookapp.data.serialization;
+
+import com.google.gson.Gson;
+
+import com.tehmou.rxbookapp.pojo.GitHubRepository;
+import com.tehmou.rxbookapp.pojo.GitHubRepositorySearch;
+import com.tehmou.rxbookapp.pojo.UserSettings;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CodecRegistryTest {
+    private final Gson gson = CodecRegistry.getGson();
+
+    @Test
+    public void testGitHubRepositoryMatchesReflectiveJson() {
+        GitHubRepository repository = new GitHubRepository(15491874, "RxJava", 100, 20);
+
+        String json = gson.toJson(repository);
+        assertEquals(new Gson().toJson(repository), json);
+
+        GitHubRepository decoded = gson.fromJson(json, GitHubRepository.class);
+        assertEquals(15491874, decoded.getId());
+        assertEquals("RxJava", decoded.getName());
+        assertEquals(100, decoded.getStargazersCount());
+        assertEquals(20, decoded.getForksCount());
+    }
+
+    @Test
+    public void testGitHubRepositorySkipsUnknownAndNullFields() {
+        GitHubRepository decoded = gson.fromJson(
+                "{\"id\":1,\"name\":null,\"owner\":{\"login\":\"x\"},\"forks_count\":3}",
+                GitHubRepository.class);
+
+        assertEquals(1, decoded.getId());
+        assertNull(decoded.getName());
+        assertEquals(0, decoded.getStargazersCount());
+        assertEquals(3, decoded.getForksCount());
+    }
+
+    @Test
+    public void testGitHubRepositorySearchMatchesReflectiveJson() {
+        GitHubRepositorySearch search = new GitHubRepositorySearch("rx", Arrays.asList(1, 2, 3));
+
+        String json = gson.toJson(search);
+        assertEquals(new Gson().toJson(search), json);
+
+        GitHubRepositorySearch decoded = gson.fromJson(json, GitHubRepositorySearch.class);
+        assertEquals("rx", decoded.getSearch());
+        assertEquals(Arrays.asList(1, 2, 3), decoded.getItems());
+    }
+
+    @Test
+    public void testUserSettingsMatchesReflectiveJson() {
+        UserSettings userSettings = new UserSettings(42);
+
+        String json = gson.toJson(userSettings);
+        assertEquals(new Gson().toJson(userSettings), json);
+
+        UserSettings decoded = gson.fromJson(json, UserSettings.class);
+        assertEquals(42, decoded.getSelectedRepositoryId());
+    }
+}